@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import com.github.jparse.FluentParser;
+import com.github.jparse.examples.instrument.Instrumentation;
+import com.github.jparse.examples.text.CharInput;
+import com.github.jparse.examples.text.ParseContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.jparse.Sequences.fromCharSequence;
+import static com.github.jparse.StatefulSequences.stateful;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+    @Param({"short", "long", "nested"})
+    private String shape;
+
+    private String input;
+    private FluentParser<Character, Node> expr;
+
+    @Setup
+    public void setUp() {
+        switch (shape) {
+        case "short":
+            input = "1+(2-3)*4";
+            break;
+        case "long":
+            input = longInput(200);
+            break;
+        case "nested":
+            input = nestedInput(100);
+            break;
+        default:
+            throw new IllegalArgumentException(shape);
+        }
+        expr = Calculator.newExpr(Instrumentation.NONE);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return expr.phrase().parse(new CharInput(input));
+    }
+
+    @Benchmark
+    public Object parsePooled() {
+        ParseContext context = ParseContext.acquire();
+        try {
+            return expr.phrase().parse(context.input(input)).isSuccess();
+        } finally {
+            context.release();
+        }
+    }
+
+    @Benchmark
+    public Object parseBoxed() {
+        return expr.phrase().parse(stateful(fromCharSequence(input)));
+    }
+
+    @Benchmark
+    public int generatedParser() {
+        return CalculatorParser.parse(input);
+    }
+
+    static String longInput(int terms) {
+        String operators = "+-*/";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) {
+                sb.append(operators.charAt(i % operators.length()));
+            }
+            sb.append(i % 97 + 1);
+        }
+        return sb.toString();
+    }
+
+    static String nestedInput(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(');
+        }
+        sb.append('1');
+        for (int i = 0; i < depth; i++) {
+            sb.append('+').append(i + 2).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.FluentParser;
+import com.github.jparse.examples.instrument.Instrumentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.jparse.Parsers.phrase;
+import static com.github.jparse.StatefulSequences.stateful;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EbnfBenchmark {
+
+    @Param({"bundled", "synthetic"})
+    private String source;
+
+    private String input;
+    private FluentParser<Token, Grammar> grammar;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (source) {
+        case "bundled":
+            input = Ebnf.readFully(new InputStreamReader(Ebnf.class.getResourceAsStream("grammar")));
+            break;
+        case "synthetic":
+            input = syntheticGrammar(10000);
+            break;
+        default:
+            throw new IllegalArgumentException(source);
+        }
+        grammar = Ebnf.newGrammar(Instrumentation.NONE);
+    }
+
+    @Benchmark
+    public Object tokenize() {
+        return Lexer.tokenize(input);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return phrase(grammar).parse(stateful(Lexer.tokenize(input)));
+    }
+
+    @Benchmark
+    public int stream() {
+        int count = 0;
+        for (Iterator<Rule> rules = Ebnf.rules(input); rules.hasNext(); rules.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    static String syntheticGrammar(int rules) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/* synthetic grammar */\n");
+        for (int i = 0; i < rules; i++) {
+            sb.append("rule").append(i).append(" : ");
+            if (i + 1 < rules) {
+                sb.append("rule").append(i + 1).append(" ('a' | \"b\")* | ");
+            }
+            sb.append("'c").append(i).append("' sep? /* alternative ").append(i).append(" */;\n");
+        }
+        sb.append("sep : ',' | ';';\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Compares parsing a grammar file with loading it through its snapshot, including the source checksum that decides
+// whether the snapshot is still valid.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrammarSnapshotBenchmark {
+
+    @Param({"bundled", "synthetic"})
+    private String source;
+
+    private Path directory;
+    private Path path;
+
+    @Setup
+    public void setUp() throws IOException {
+        String input;
+        switch (source) {
+        case "bundled":
+            input = Ebnf.readFully(new InputStreamReader(Ebnf.class.getResourceAsStream("grammar")));
+            break;
+        case "synthetic":
+            input = EbnfBenchmark.syntheticGrammar(10000);
+            break;
+        default:
+            throw new IllegalArgumentException(source);
+        }
+        directory = Files.createTempDirectory("snapshot");
+        path = directory.resolve("grammar");
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+        GrammarSnapshot.load(path);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".snapshot"));
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Grammar parse() throws IOException {
+        return Ebnf.parse(path);
+    }
+
+    @Benchmark
+    public Grammar load() throws IOException {
+        return GrammarSnapshot.load(path);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples;
+
+import com.github.jparse.examples.calculator.Calculator;
+import com.github.jparse.examples.ebnf.Ebnf;
+import com.github.jparse.examples.ebnf.Grammar;
+import com.github.jparse.examples.ebnf.GrammarInterpreter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+// Produces the first result of each example in a fresh JVM and reports how long it took, from the start of the JVM
+// and from the start of main. The cds profile uses it both as the training run for the class-data-sharing archive
+// and to compare startup with and without that archive.
+public final class ColdStart {
+
+    private ColdStart() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long mainStart = System.nanoTime();
+        Number value = Calculator.evaluate(args.length > 1 ? args[1] : "1+(2-3)*4");
+        long calculatorEnd = System.nanoTime();
+        Grammar grammar = Ebnf.parse(Paths.get(args[0]));
+        boolean success = new GrammarInterpreter(grammar).parse("expr", "1+(2-3)*4").isSuccess();
+        long ebnfEnd = System.nanoTime();
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        long mainMillis = (ebnfEnd - mainStart) / 1000000;
+        System.out.printf("calculator: %s in %.1f ms%n", value, (calculatorEnd - mainStart) / 1e6);
+        System.out.printf("ebnf: %d rules, %s in %.1f ms%n", grammar.getRules().size(), success ? "parsed" : "failed",
+                (ebnfEnd - calculatorEnd) / 1e6);
+        System.out.printf("time to first results: %d ms in main, %d ms since JVM start%n", mainMillis, uptime);
+    }
+}
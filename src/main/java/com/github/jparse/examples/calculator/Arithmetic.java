@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+import static java.util.Objects.requireNonNull;
+
+public final class Arithmetic {
+
+    public static final Arithmetic DECIMAL = new Arithmetic(MathContext.DECIMAL128, false);
+    public static final Arithmetic FLOATING = new Arithmetic(MathContext.DECIMAL64, true);
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final MathContext mathContext;
+    private final boolean floating;
+
+    private Arithmetic(MathContext mathContext, boolean floating) {
+        this.mathContext = requireNonNull(mathContext);
+        this.floating = floating;
+    }
+
+    public static Arithmetic decimal(MathContext mathContext) {
+        return new Arithmetic(mathContext, false);
+    }
+
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    public boolean isFloating() {
+        return floating;
+    }
+
+    static Number parse(String literal) {
+        int start = literal.startsWith("-") || literal.startsWith("+") ? 1 : 0;
+        int length = literal.length() - start;
+        if (length > 0 && length <= MAX_LONG_DIGITS) {
+            boolean integral = true;
+            for (int i = start; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if (c < '0' || c > '9') {
+                    integral = false;
+                    break;
+                }
+            }
+            if (integral) {
+                return Long.parseLong(literal);
+            }
+        }
+        return new BigDecimal(literal);
+    }
+
+    public Number add(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = left.longValue();
+            long b = right.longValue();
+            long r = a + b;
+            if (((a ^ r) & (b ^ r)) >= 0) {
+                return r;
+            }
+        }
+        if (floating) {
+            return left.doubleValue() + right.doubleValue();
+        }
+        return toBigDecimal(left).add(toBigDecimal(right), mathContext);
+    }
+
+    public Number subtract(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = left.longValue();
+            long b = right.longValue();
+            long r = a - b;
+            if (((a ^ b) & (a ^ r)) >= 0) {
+                return r;
+            }
+        }
+        if (floating) {
+            return left.doubleValue() - right.doubleValue();
+        }
+        return toBigDecimal(left).subtract(toBigDecimal(right), mathContext);
+    }
+
+    public Number multiply(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = left.longValue();
+            long b = right.longValue();
+            long r = a * b;
+            if ((Math.abs(a) | Math.abs(b)) >>> 31 == 0 ||
+                    (b == 0 || r / b == a) && (a != Long.MIN_VALUE || b != -1)) {
+                return r;
+            }
+        }
+        if (floating) {
+            return left.doubleValue() * right.doubleValue();
+        }
+        return toBigDecimal(left).multiply(toBigDecimal(right), mathContext);
+    }
+
+    public Number divide(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = left.longValue();
+            long b = right.longValue();
+            if (b == 0) {
+                if (!floating) {
+                    throw new ArithmeticException("Division by zero");
+                }
+            } else if (a % b == 0 && (a != Long.MIN_VALUE || b != -1)) {
+                return a / b;
+            }
+        }
+        if (floating) {
+            return left.doubleValue() / right.doubleValue();
+        }
+        return toBigDecimal(left).divide(toBigDecimal(right), mathContext);
+    }
+
+    Number normalize(Number value) {
+        if (value instanceof Long || value instanceof BigDecimal || floating && value instanceof Double) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value.longValue();
+        } else if (floating) {
+            return value.doubleValue();
+        }
+        return toBigDecimal(value);
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short ||
+                value instanceof Byte) {
+            return BigDecimal.valueOf(value.longValue());
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        return BigDecimal.valueOf(value.doubleValue());
+    }
+
+    @Override
+    public String toString() {
+        return floating ? "floating" : "decimal(" + mathContext + ')';
+    }
+}
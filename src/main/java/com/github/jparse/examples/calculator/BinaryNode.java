@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+final class BinaryNode extends Node {
+
+    private final Operator operator;
+    private final Node left;
+    private final Node right;
+
+    BinaryNode(Operator operator, Node left, Node right) {
+        this.operator = requireNonNull(operator);
+        this.left = requireNonNull(left);
+        this.right = requireNonNull(right);
+    }
+
+    Operator getOperator() {
+        return operator;
+    }
+
+    Node getLeft() {
+        return left;
+    }
+
+    Node getRight() {
+        return right;
+    }
+
+    @Override
+    Number evaluate(Arithmetic arithmetic, Number[] values) {
+        return operator.apply(arithmetic, left.evaluate(arithmetic, values), right.evaluate(arithmetic, values));
+    }
+
+    @Override
+    void collectVariables(Set<String> variables) {
+        left.collectVariables(variables);
+        right.collectVariables(variables);
+    }
+
+    @Override
+    Node bind(Map<String, Integer> slots) {
+        return new BinaryNode(operator, left.bind(slots), right.bind(slots));
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + operator.getSymbol() + right + ')';
+    }
+}
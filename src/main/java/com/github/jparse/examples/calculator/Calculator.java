@@ -29,101 +29,249 @@ import com.github.jparse.Function;
 import com.github.jparse.Pair;
 import com.github.jparse.ParseResult;
 import com.github.jparse.Sequence;
+import com.github.jparse.examples.instrument.Instrumentation;
+import com.github.jparse.examples.text.ParseContext;
 
-import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
-import static com.github.jparse.CharParsers.literal;
-import static com.github.jparse.CharParsers.pattern;
-import static com.github.jparse.Sequences.fromCharSequence;
-import static com.github.jparse.StatefulParsers.log;
-import static com.github.jparse.StatefulParsers.memo;
-import static com.github.jparse.StatefulSequences.stateful;
+import static com.github.jparse.examples.text.TextParsers.cut;
+import static com.github.jparse.examples.text.TextParsers.lazy;
+import static com.github.jparse.examples.text.TextParsers.literal;
+import static com.github.jparse.examples.text.TextParsers.pattern;
 
 public final class Calculator {
 
-    private static final FluentParser<Character, BigDecimal> multiplicationOrDivision;
-    private static final FluentParser<Character, BigDecimal> additionOrSubtraction;
-    private static final FluentParser<Character, BigDecimal> expr;
+    private static final Map<Instrumentation, Parsers> instrumentedParsers = Collections.synchronizedMap(
+            new WeakHashMap<Instrumentation, Parsers>());
 
-    static {
-        Function<String, BigDecimal> newBigDecimal = new Function<String, BigDecimal>() {
-            @Override
-            public BigDecimal apply(String arg) {
-                return new BigDecimal(arg);
-            }
-        };
-        Function<Pair<BigDecimal, BigDecimal>, BigDecimal> add = new Function<Pair<BigDecimal, BigDecimal>,
-                BigDecimal>() {
-            @Override
-            public BigDecimal apply(Pair<BigDecimal, BigDecimal> arg) {
-                return arg.getLeft().add(arg.getRight());
-            }
-        };
-        Function<Pair<BigDecimal, BigDecimal>, BigDecimal> subtract = new Function<Pair<BigDecimal, BigDecimal>,
-                BigDecimal>() {
-            @Override
-            public BigDecimal apply(Pair<BigDecimal, BigDecimal> arg) {
-                return arg.getLeft().subtract(arg.getRight());
+    public static void main(String[] args) {
+        boolean trace = args.length > 0 && args[0].equals("--trace");
+        int index = trace ? 1 : 0;
+        String sequence = args.length > index ? args[index] : "1+(2-3)*4";
+        try {
+            if (sequence.indexOf(';') >= 0) {
+                System.out.println(run(sequence, Arithmetic.DECIMAL, new HashMap<String, Number>(),
+                        trace ? Instrumentation.TRACE : Instrumentation.NONE));
+            } else {
+                System.out.println(compile(sequence, trace).evaluate());
             }
-        };
-        Function<Pair<BigDecimal, BigDecimal>, BigDecimal> multiply = new Function<Pair<BigDecimal, BigDecimal>,
-                BigDecimal>() {
-            @Override
-            public BigDecimal apply(Pair<BigDecimal, BigDecimal> arg) {
-                return arg.getLeft().multiply(arg.getRight());
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public static CompiledExpression compile(CharSequence sequence) {
+        return compile(sequence, false);
+    }
+
+    public static CompiledExpression compile(CharSequence sequence, boolean trace) {
+        return compile(sequence, trace ? Instrumentation.TRACE : Instrumentation.NONE);
+    }
+
+    // The parse runs in this thread's pooled context; nothing returned refers to the input, so the context can be
+    // reset by the next parse.
+    public static CompiledExpression compile(CharSequence sequence, Instrumentation instrumentation) {
+        ParseContext context = ParseContext.acquire();
+        try {
+            ParseResult<Character, ? extends Node> result = parsers(instrumentation).expr.phrase().parse(
+                    instrumentation.input(sequence, context));
+            if (!result.isSuccess()) {
+                throw new IllegalArgumentException(
+                        result.getMessage() + " at " + (sequence.length() - result.getRest().length()));
             }
-        };
-        Function<Pair<BigDecimal, BigDecimal>, BigDecimal> divide = new Function<Pair<BigDecimal, BigDecimal>,
-                BigDecimal>() {
-            @Override
-            public BigDecimal apply(Pair<BigDecimal, BigDecimal> arg) {
-                return arg.getLeft().divide(arg.getRight());
+            return new CompiledExpression(result.getResult());
+        } finally {
+            context.release();
+        }
+    }
+
+    public static Number evaluate(CharSequence sequence) {
+        return compile(sequence).evaluate();
+    }
+
+    public static Number evaluate(CharSequence sequence, Arithmetic arithmetic) {
+        return compile(sequence).evaluate(arithmetic);
+    }
+
+    public static Number run(CharSequence script) {
+        return run(script, Arithmetic.DECIMAL, new HashMap<String, Number>());
+    }
+
+    public static Number run(CharSequence script, Arithmetic arithmetic, Map<String, Number> variables) {
+        return run(script, arithmetic, variables, Instrumentation.NONE);
+    }
+
+    // Runs ';'-terminated statements one at a time. Each statement is a cut, so the memo tables only hold entries
+    // for the statement being parsed, and assignments are visible to the statements that follow.
+    public static Number run(CharSequence script, Arithmetic arithmetic, Map<String, Number> variables,
+                             Instrumentation instrumentation) {
+        FluentParser<Character, Statement> statement = parsers(instrumentation).statement;
+        ParseContext context = ParseContext.acquire();
+        try {
+            Sequence<Character> rest = instrumentation.input(script, context);
+            Number value = null;
+            while (!isBlank(rest)) {
+                ParseResult<Character, ? extends Statement> result = statement.parse(rest);
+                if (!result.isSuccess()) {
+                    throw new IllegalArgumentException(
+                            result.getMessage() + " at " + (script.length() - result.getRest().length()));
+                }
+                value = new CompiledExpression(result.getResult().getExpression()).evaluate(arithmetic, variables);
+                if (result.getResult().getVariable() != null) {
+                    variables.put(result.getResult().getVariable(), value);
+                }
+                rest = result.getRest();
             }
-        };
-        FluentParser<Character, BigDecimal> multiplicationOrDivisionRef = new FluentParser<Character, BigDecimal>() {
-            @Override
-            public ParseResult<Character, ? extends BigDecimal> parse(Sequence<Character> sequence) {
-                return multiplicationOrDivision.parse(sequence);
+            return value;
+        } finally {
+            context.release();
+        }
+    }
+
+    static FluentParser<Character, Node> newExpr(Instrumentation instrumentation) {
+        return new Parsers(instrumentation).expr;
+    }
+
+    private static Parsers parsers(Instrumentation instrumentation) {
+        if (instrumentation == Instrumentation.NONE) {
+            return DefaultParsers.parsers;
+        }
+        synchronized (instrumentedParsers) {
+            Parsers p = instrumentedParsers.get(instrumentation);
+            if (p == null) {
+                p = new Parsers(instrumentation);
+                instrumentedParsers.put(instrumentation, p);
             }
-        };
-        FluentParser<Character, BigDecimal> additionOrSubtractionRef = new FluentParser<Character, BigDecimal>() {
-            @Override
-            public ParseResult<Character, ? extends BigDecimal> parse(Sequence<Character> sequence) {
-                return additionOrSubtraction.parse(sequence);
+            return p;
+        }
+    }
+
+    private static boolean isBlank(Sequence<Character> sequence) {
+        for (int i = 0; i < sequence.length(); i++) {
+            if (!Character.isWhitespace(sequence.at(i))) {
+                return false;
             }
-        };
-        FluentParser<Character, BigDecimal> number = log(
-                pattern("[-+]?\\d*\\.?\\d+([eE][-+]?\\d+)?").map(newBigDecimal).named("number"));
-        FluentParser<Character, BigDecimal> grouping = log(literal("(").asError()
-                .thenRight(additionOrSubtractionRef)
-                .thenLeft(literal(")").asError()).named("grouping"));
-        FluentParser<Character, BigDecimal> numberOrGrouping = log(number.orelse(grouping).named("numberOrGrouping"));
-        FluentParser<Character, BigDecimal> multiplication = log(multiplicationOrDivisionRef.thenLeft(literal("*"))
-                .then(numberOrGrouping)
-                .map(multiply).named("multiplication"));
-        FluentParser<Character, BigDecimal> division = log(multiplicationOrDivisionRef.thenLeft(literal("/"))
-                .then(numberOrGrouping)
-                .map(divide).named("division"));
-        multiplicationOrDivision = log(
-                memo(multiplication.orelse(division).orelse(numberOrGrouping)).named("multiplicationOrDivision"));
-        FluentParser<Character, BigDecimal> addition = log(additionOrSubtractionRef.thenLeft(literal("+"))
-                .then(multiplicationOrDivisionRef)
-                .map(add).named("addition"));
-        FluentParser<Character, BigDecimal> subtraction = log(additionOrSubtractionRef.thenLeft(literal("-"))
-                .then(multiplicationOrDivisionRef)
-                .map(subtract).named("subtraction"));
-        additionOrSubtraction = log(
-                memo(addition.orelse(subtraction).orelse(multiplicationOrDivisionRef)).named("additionOrSubtraction"));
-        expr = additionOrSubtraction.asFailure();
+        }
+        return true;
     }
 
-    public static void main(String[] args) {
-        String sequence = "1+(2-3)*4";
-        ParseResult<Character, ? extends BigDecimal> result = expr.phrase().parse(stateful(fromCharSequence(sequence)));
-        if (result.isSuccess()) {
-            System.out.println(result.getResult());
-        } else {
-            System.out.println(result.getMessage() + " at " + (sequence.length() - result.getRest().length()));
+    private static final class Parsers {
+
+        final FluentParser<Character, Node> multiplicationOrDivision;
+        final FluentParser<Character, Node> additionOrSubtraction;
+        final FluentParser<Character, Node> expr;
+        final FluentParser<Character, Statement> statement;
+
+        Parsers(final Instrumentation instrumentation) {
+            Function<String, Node> newConstant = new Function<String, Node>() {
+                @Override
+                public Node apply(String arg) {
+                    return new ConstantNode(Arithmetic.parse(arg));
+                }
+            };
+            Function<String, Node> newVariable = new Function<String, Node>() {
+                @Override
+                public Node apply(String arg) {
+                    return new VariableNode(arg);
+                }
+            };
+            Function<Pair<Node, Node>, Node> add = new Function<Pair<Node, Node>, Node>() {
+                @Override
+                public Node apply(Pair<Node, Node> arg) {
+                    return new BinaryNode(Operator.ADD, arg.getLeft(), arg.getRight());
+                }
+            };
+            Function<Pair<Node, Node>, Node> subtract = new Function<Pair<Node, Node>, Node>() {
+                @Override
+                public Node apply(Pair<Node, Node> arg) {
+                    return new BinaryNode(Operator.SUBTRACT, arg.getLeft(), arg.getRight());
+                }
+            };
+            Function<Pair<Node, Node>, Node> multiply = new Function<Pair<Node, Node>, Node>() {
+                @Override
+                public Node apply(Pair<Node, Node> arg) {
+                    return new BinaryNode(Operator.MULTIPLY, arg.getLeft(), arg.getRight());
+                }
+            };
+            Function<Pair<Node, Node>, Node> divide = new Function<Pair<Node, Node>, Node>() {
+                @Override
+                public Node apply(Pair<Node, Node> arg) {
+                    return new BinaryNode(Operator.DIVIDE, arg.getLeft(), arg.getRight());
+                }
+            };
+            FluentParser<Character, Node> multiplicationOrDivisionRef = new FluentParser<Character, Node>() {
+                @Override
+                public ParseResult<Character, ? extends Node> parse(Sequence<Character> sequence) {
+                    return multiplicationOrDivision.parse(sequence);
+                }
+            };
+            FluentParser<Character, Node> additionOrSubtractionRef = new FluentParser<Character, Node>() {
+                @Override
+                public ParseResult<Character, ? extends Node> parse(Sequence<Character> sequence) {
+                    return additionOrSubtraction.parse(sequence);
+                }
+            };
+            FluentParser<Character, Node> number = instrumentation.rule(
+                    pattern("[-+]?\\d*\\.?\\d+([eE][-+]?\\d+)?").map(newConstant), "number");
+            FluentParser<Character, Node> variable = instrumentation.rule(
+                    pattern("[A-Za-z_][0-9A-Za-z_]*").map(newVariable), "variable");
+            FluentParser<Character, Node> grouping = instrumentation.rule(literal("(").asError()
+                    .thenRight(additionOrSubtractionRef)
+                    .thenLeft(literal(")").asError()), "grouping");
+            FluentParser<Character, Node> operand = instrumentation.rule(
+                    instrumentation.choice(Arrays.asList(number, variable, grouping), "operand"), "operand");
+            FluentParser<Character, Node> multiplication = instrumentation.rule(
+                    multiplicationOrDivisionRef.thenLeft(literal("*")).then(operand).map(multiply), "multiplication");
+            FluentParser<Character, Node> division = instrumentation.rule(
+                    multiplicationOrDivisionRef.thenLeft(literal("/")).then(operand).map(divide), "division");
+            multiplicationOrDivision = instrumentation.memoRule(instrumentation.choice(
+                    Arrays.asList(multiplication, division, operand), "multiplicationOrDivision"),
+                    "multiplicationOrDivision");
+            FluentParser<Character, Node> addition = instrumentation.rule(
+                    additionOrSubtractionRef.thenLeft(literal("+")).then(multiplicationOrDivisionRef).map(add),
+                    "addition");
+            FluentParser<Character, Node> subtraction = instrumentation.rule(
+                    additionOrSubtractionRef.thenLeft(literal("-")).then(multiplicationOrDivisionRef).map(subtract),
+                    "subtraction");
+            additionOrSubtraction = instrumentation.memoRule(instrumentation.choice(
+                    Arrays.asList(addition, subtraction, multiplicationOrDivisionRef), "additionOrSubtraction"),
+                    "additionOrSubtraction");
+            expr = additionOrSubtraction.asFailure();
+            statement = lazy(new Supplier<FluentParser<Character, Statement>>() {
+                @Override
+                public FluentParser<Character, Statement> get() {
+                    Function<Pair<String, Node>, Statement> newAssignment = new Function<Pair<String, Node>,
+                            Statement>() {
+                        @Override
+                        public Statement apply(Pair<String, Node> arg) {
+                            return new Statement(arg.getLeft(), arg.getRight());
+                        }
+                    };
+                    Function<Node, Statement> newStatement = new Function<Node, Statement>() {
+                        @Override
+                        public Statement apply(Node arg) {
+                            return new Statement(null, arg);
+                        }
+                    };
+                    FluentParser<Character, Statement> assignment = instrumentation.rule(
+                            pattern("[A-Za-z_][0-9A-Za-z_]*").thenLeft(literal("=")).then(additionOrSubtraction)
+                                    .map(newAssignment), "assignment");
+                    return cut(instrumentation.rule(instrumentation.choice(
+                            Arrays.asList(assignment, additionOrSubtraction.map(newStatement)), "statement")
+                            .thenLeft(literal(";").asError()), "statement"));
+                }
+            });
         }
     }
+
+    // Built on the first parse rather than when the class is loaded.
+    private static final class DefaultParsers {
+
+        static final Parsers parsers = new Parsers(Instrumentation.NONE);
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+// A loopback server evaluating newline-delimited expressions, one virtual thread per connection. The lines a client
+// has already pipelined are read as one batch and answered with one flush; a connection's thread keeps its pooled
+// parse context for its whole lifetime, and all connections share one expression cache. A line ":stats" is answered
+// with the server counters.
+public final class CalculatorServer implements Closeable {
+
+    private static final String STATS = ":stats";
+
+    private final ServerSocket serverSocket;
+    private final ExpressionCache cache;
+    private final Arithmetic arithmetic;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public CalculatorServer(int port) throws IOException {
+        this(port, new ExpressionCache(10000), Arithmetic.DECIMAL);
+    }
+
+    public CalculatorServer(int port, ExpressionCache cache, Arithmetic arithmetic) throws IOException {
+        this.cache = requireNonNull(cache);
+        this.arithmetic = requireNonNull(arithmetic);
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        CalculatorServer server = new CalculatorServer(port);
+        System.out.println("Listening on " + server.serverSocket.getLocalSocketAddress());
+        server.serve();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public CalculatorServer start() {
+        Thread.ofVirtual().name("calculator-server").start(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        return this;
+    }
+
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw new IllegalStateException(e);
+            }
+            connections.increment();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    public long getConnectionCount() {
+        return connections.sum();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public double getThroughput() {
+        return requests.sum() * 1e9 / Math.max(1, System.nanoTime() - startNanos);
+    }
+
+    public double getMeanLatencyNanos() {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) latencyNanos.sum() / count;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("connections=%d requests=%d errors=%d batches=%d throughput=%.1f/s " +
+                        "latency.mean=%.1fus latency.max=%.1fus %s", getConnectionCount(), getRequestCount(),
+                getErrorCount(), getBatchCount(), getThroughput(), getMeanLatencyNanos() / 1e3,
+                getMaxLatencyNanos() / 1e3, cache);
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                     StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(),
+                     StandardCharsets.UTF_8))) {
+            List<String> batch = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(line);
+                while (reader.ready() && (line = reader.readLine()) != null) {
+                    batch.add(line);
+                }
+                long start = System.nanoTime();
+                batches.increment();
+                for (String request : batch) {
+                    writer.write(evaluate(request));
+                    writer.write('\n');
+                }
+                writer.flush();
+                record(batch.size(), System.nanoTime() - start);
+                batch.clear();
+            }
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String evaluate(String request) {
+        if (request.trim().equals(STATS)) {
+            return toString();
+        }
+        try {
+            return cache.evaluate(request, arithmetic).toString();
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            errors.increment();
+            return "error: " + e.getMessage();
+        }
+    }
+
+    // Every request in a batch is charged the latency of the whole batch, which is what a pipelining client sees.
+    private void record(int count, long nanos) {
+        requests.add(count);
+        latencyNanos.add(nanos * count);
+        long max;
+        while (nanos > (max = maxLatencyNanos.get()) && !maxLatencyNanos.compareAndSet(max, nanos)) {
+        }
+    }
+}
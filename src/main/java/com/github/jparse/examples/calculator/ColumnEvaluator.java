@@ -0,0 +1,298 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Evaluates a compiled expression over whole columns at once in plain double arithmetic, not under an Arithmetic. A
+// long column is widened to double, so values beyond 2^53 are rounded before any operator sees them, and results can
+// differ from Arithmetic.DECIMAL; use CompiledExpression.evaluate row by row where exact results matter.
+public final class ColumnEvaluator {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int SPLIT_THRESHOLD = 64 * CHUNK_SIZE;
+
+    private static final int CONSTANT = 0;
+    private static final int VARIABLE = 1;
+    private static final int ADD = 2;
+    private static final int SUBTRACT = 3;
+    private static final int MULTIPLY = 4;
+    private static final int DIVIDE = 5;
+    private static final int ADD_CONSTANT = 6;
+    private static final int SUBTRACT_CONSTANT = 7;
+    private static final int MULTIPLY_CONSTANT = 8;
+    private static final int DIVIDE_CONSTANT = 9;
+
+    private final List<String> variables;
+    private final int[] opcodes;
+    private final int[] operands;
+    private final double[] constants;
+    private final int depth;
+
+    public ColumnEvaluator(CompiledExpression expression) {
+        variables = expression.getVariables();
+        Program program = new Program();
+        program.emit(expression.getRoot());
+        opcodes = program.toArray(program.opcodes);
+        operands = program.toArray(program.operands);
+        constants = new double[program.constants.size()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = program.constants.get(i);
+        }
+        depth = program.maxDepth;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public void evaluate(Map<String, ?> columns, double[] out) {
+        evaluate(columns, out, ForkJoinPool.commonPool());
+    }
+
+    public void evaluate(Map<String, ?> columns, double[] out, ForkJoinPool pool) {
+        Object[] inputs = new Object[variables.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            String name = variables.get(i);
+            Object column = columns.get(name);
+            int length;
+            if (column instanceof double[]) {
+                length = ((double[]) column).length;
+            } else if (column instanceof long[]) {
+                length = ((long[]) column).length;
+            } else if (column == null) {
+                throw new IllegalArgumentException("Unbound variable " + name);
+            } else {
+                throw new IllegalArgumentException("Column " + name + " is neither double[] nor long[]");
+            }
+            if (length != out.length) {
+                throw new IllegalArgumentException(
+                        "Column " + name + " has " + length + " rows, expected " + out.length);
+            }
+            inputs[i] = column;
+        }
+        if (out.length <= SPLIT_THRESHOLD) {
+            evaluate(inputs, out, 0, out.length);
+        } else {
+            pool.invoke(new EvaluationTask(inputs, out, 0, out.length));
+        }
+    }
+
+    private void evaluate(Object[] inputs, double[] out, int from, int to) {
+        double[][] stack = new double[depth][CHUNK_SIZE];
+        for (int offset = from; offset < to; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, to - offset);
+            evaluateChunk(inputs, stack, offset, length);
+            System.arraycopy(stack[0], 0, out, offset, length);
+        }
+    }
+
+    // Each operator runs as a separate counted loop over primitive arrays, which the JIT can unroll and vectorize.
+    private void evaluateChunk(Object[] inputs, double[][] stack, int offset, int length) {
+        int sp = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int operand = operands[pc];
+            switch (opcodes[pc]) {
+            case CONSTANT:
+                Arrays.fill(stack[sp++], 0, length, constants[operand]);
+                break;
+            case VARIABLE: {
+                Object input = inputs[operand];
+                double[] r = stack[sp++];
+                if (input instanceof double[]) {
+                    System.arraycopy(input, offset, r, 0, length);
+                } else {
+                    long[] a = (long[]) input;
+                    for (int i = 0; i < length; i++) {
+                        r[i] = a[offset + i];
+                    }
+                }
+                break;
+            }
+            case ADD: {
+                double[] r = stack[sp - 2];
+                double[] b = stack[--sp];
+                for (int i = 0; i < length; i++) {
+                    r[i] += b[i];
+                }
+                break;
+            }
+            case SUBTRACT: {
+                double[] r = stack[sp - 2];
+                double[] b = stack[--sp];
+                for (int i = 0; i < length; i++) {
+                    r[i] -= b[i];
+                }
+                break;
+            }
+            case MULTIPLY: {
+                double[] r = stack[sp - 2];
+                double[] b = stack[--sp];
+                for (int i = 0; i < length; i++) {
+                    r[i] *= b[i];
+                }
+                break;
+            }
+            case DIVIDE: {
+                double[] r = stack[sp - 2];
+                double[] b = stack[--sp];
+                for (int i = 0; i < length; i++) {
+                    r[i] /= b[i];
+                }
+                break;
+            }
+            case ADD_CONSTANT: {
+                double[] r = stack[sp - 1];
+                double c = constants[operand];
+                for (int i = 0; i < length; i++) {
+                    r[i] += c;
+                }
+                break;
+            }
+            case SUBTRACT_CONSTANT: {
+                double[] r = stack[sp - 1];
+                double c = constants[operand];
+                for (int i = 0; i < length; i++) {
+                    r[i] -= c;
+                }
+                break;
+            }
+            case MULTIPLY_CONSTANT: {
+                double[] r = stack[sp - 1];
+                double c = constants[operand];
+                for (int i = 0; i < length; i++) {
+                    r[i] *= c;
+                }
+                break;
+            }
+            case DIVIDE_CONSTANT: {
+                double[] r = stack[sp - 1];
+                double c = constants[operand];
+                for (int i = 0; i < length; i++) {
+                    r[i] /= c;
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown opcode " + opcodes[pc]);
+            }
+        }
+    }
+
+    private static int opcode(Operator operator, boolean constant) {
+        switch (operator) {
+        case ADD:
+            return constant ? ADD_CONSTANT : ADD;
+        case SUBTRACT:
+            return constant ? SUBTRACT_CONSTANT : SUBTRACT;
+        case MULTIPLY:
+            return constant ? MULTIPLY_CONSTANT : MULTIPLY;
+        case DIVIDE:
+            return constant ? DIVIDE_CONSTANT : DIVIDE;
+        default:
+            throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+    }
+
+    private static final class Program {
+
+        final List<Integer> opcodes = new ArrayList<>();
+        final List<Integer> operands = new ArrayList<>();
+        final List<Double> constants = new ArrayList<>();
+        int depth;
+        int maxDepth;
+
+        void emit(Node node) {
+            if (node instanceof ConstantNode) {
+                add(CONSTANT, constant((ConstantNode) node), 1);
+            } else if (node instanceof VariableNode) {
+                add(VARIABLE, ((VariableNode) node).getSlot(), 1);
+            } else if (node instanceof BinaryNode) {
+                BinaryNode binaryNode = (BinaryNode) node;
+                emit(binaryNode.getLeft());
+                if (binaryNode.getRight() instanceof ConstantNode) {
+                    add(opcode(binaryNode.getOperator(), true), constant((ConstantNode) binaryNode.getRight()), 0);
+                } else {
+                    emit(binaryNode.getRight());
+                    add(opcode(binaryNode.getOperator(), false), 0, -1);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown node " + node);
+            }
+        }
+
+        private int constant(ConstantNode node) {
+            constants.add(node.getValue().doubleValue());
+            return constants.size() - 1;
+        }
+
+        private void add(int opcode, int operand, int delta) {
+            opcodes.add(opcode);
+            operands.add(operand);
+            depth += delta;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+    }
+
+    private final class EvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Object[] inputs;
+        private final double[] out;
+        private final int from;
+        private final int to;
+
+        EvaluationTask(Object[] inputs, double[] out, int from, int to) {
+            this.inputs = inputs;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                evaluate(inputs, out, from, to);
+            } else {
+                int middle = from + (to - from) / 2 / CHUNK_SIZE * CHUNK_SIZE;
+                invokeAll(new EvaluationTask(inputs, out, from, middle), new EvaluationTask(inputs, out, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class CompiledExpression {
+
+    private final Node root;
+    private final List<String> variables;
+
+    CompiledExpression(Node node) {
+        Set<String> names = new LinkedHashSet<>();
+        node.collectVariables(names);
+        Map<String, Integer> slots = new HashMap<>();
+        for (String name : names) {
+            slots.put(name, slots.size());
+        }
+        root = node.bind(slots);
+        variables = Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public Number evaluate(Number... values) {
+        return evaluate(Arithmetic.DECIMAL, values);
+    }
+
+    public Number evaluate(Arithmetic arithmetic, Number... values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() + " values, got " + values.length);
+        }
+        Number[] normalized = new Number[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalized[i] = arithmetic.normalize(values[i]);
+        }
+        return root.evaluate(arithmetic, normalized);
+    }
+
+    public Number evaluate(Map<String, ? extends Number> bindings) {
+        return evaluate(Arithmetic.DECIMAL, bindings);
+    }
+
+    public Number evaluate(Arithmetic arithmetic, Map<String, ? extends Number> bindings) {
+        Number[] values = new Number[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            String name = variables.get(i);
+            Number value = bindings.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Unbound variable " + name);
+            }
+            values[i] = arithmetic.normalize(value);
+        }
+        return root.evaluate(arithmetic, values);
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// A bounded cache of compiled expressions keyed on the expression text. Entries are spread over independently locked
+// access-ordered segments, each evicting its least recently used entries once it exceeds its share of the size or
+// weight bound; the weight of an entry is the length of its text. Shares are rounded down and small bounds get fewer
+// segments, so the cache never holds more than either bound, though it may hold less; an entry heavier than a share
+// is not kept at all.
+public final class ExpressionCache {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpressionCache(int maximumSize) {
+        this(maximumSize, Long.MAX_VALUE);
+    }
+
+    public ExpressionCache(int maximumSize, long maximumWeight) {
+        if (maximumSize <= 0 || maximumWeight <= 0) {
+            throw new IllegalArgumentException("Illegal cache bounds " + maximumSize + ", " + maximumWeight);
+        }
+        int count = Integer.highestOneBit((int) Math.min(MAX_SEGMENTS, Math.min(maximumSize, maximumWeight)));
+        int segmentSize = maximumSize / count;
+        long segmentWeight = maximumWeight / count;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentSize, segmentWeight);
+        }
+    }
+
+    public CompiledExpression compile(CharSequence sequence) {
+        return entry(sequence).expression;
+    }
+
+    public Number evaluate(CharSequence sequence) {
+        return evaluate(sequence, Arithmetic.DECIMAL);
+    }
+
+    // Constant expressions keep the value computed under the last arithmetic they were evaluated with, so repeated
+    // evaluations under the same arithmetic skip the tree walk as well as the parse.
+    public Number evaluate(CharSequence sequence, Arithmetic arithmetic) {
+        Entry entry = entry(sequence);
+        if (!entry.expression.getVariables().isEmpty()) {
+            return entry.expression.evaluate(arithmetic);
+        }
+        Value value = entry.value;
+        if (value == null || value.arithmetic != arithmetic) {
+            value = new Value(arithmetic, entry.expression.evaluate(arithmetic));
+            entry.value = value;
+        }
+        return value.number;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[size=" + size() + ", weight=" + weight() + ", hits=" + hits + ", misses=" + misses +
+                ", evictions=" + evictions + ']';
+    }
+
+    // Parsing happens outside the segment lock; when two threads miss on the same text concurrently the first entry
+    // stored wins and the other compiled expression is dropped. An entry heavier than the segment's share is returned
+    // without being stored, rather than stored and then evicted along with everything else in the segment.
+    private Entry entry(CharSequence sequence) {
+        String key = sequence.toString();
+        int h = key.hashCode();
+        Segment segment = segments[(h ^ h >>> 16) & segments.length - 1];
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        Entry created = new Entry(Calculator.compile(key));
+        if (key.length() > segment.maximumWeight) {
+            return created;
+        }
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            segment.put(key, created);
+            segment.weight += key.length();
+            segment.evict();
+        }
+        return created;
+    }
+
+    private static final class Entry {
+
+        final CompiledExpression expression;
+        volatile Value value;
+
+        Entry(CompiledExpression expression) {
+            this.expression = expression;
+        }
+    }
+
+    private static final class Value {
+
+        final Arithmetic arithmetic;
+        final Number number;
+
+        Value(Arithmetic arithmetic, Number number) {
+            this.arithmetic = arithmetic;
+            this.number = number;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+        private final long maximumWeight;
+        long weight;
+
+        Segment(int maximumSize, long maximumWeight) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumWeight;
+        }
+
+        void evict() {
+            Iterator<Map.Entry<String, Entry>> iterator = entrySet().iterator();
+            while (size() > maximumSize || weight > maximumWeight) {
+                String key = iterator.next().getKey();
+                iterator.remove();
+                weight -= key.length();
+                evictions.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+enum Operator {
+
+    ADD('+') {
+        @Override
+        Number apply(Arithmetic arithmetic, Number left, Number right) {
+            return arithmetic.add(left, right);
+        }
+    },
+    SUBTRACT('-') {
+        @Override
+        Number apply(Arithmetic arithmetic, Number left, Number right) {
+            return arithmetic.subtract(left, right);
+        }
+    },
+    MULTIPLY('*') {
+        @Override
+        Number apply(Arithmetic arithmetic, Number left, Number right) {
+            return arithmetic.multiply(left, right);
+        }
+    },
+    DIVIDE('/') {
+        @Override
+        Number apply(Arithmetic arithmetic, Number left, Number right) {
+            return arithmetic.divide(left, right);
+        }
+    };
+
+    private final char symbol;
+
+    Operator(char symbol) {
+        this.symbol = symbol;
+    }
+
+    char getSymbol() {
+        return symbol;
+    }
+
+    abstract Number apply(Arithmetic arithmetic, Number left, Number right);
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+final class VariableNode extends Node {
+
+    private final String name;
+    private final int slot;
+
+    VariableNode(String name) {
+        this(name, -1);
+    }
+
+    private VariableNode(String name, int slot) {
+        this.name = requireNonNull(name);
+        this.slot = slot;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    @Override
+    Number evaluate(Arithmetic arithmetic, Number[] values) {
+        return values[slot];
+    }
+
+    @Override
+    void collectVariables(Set<String> variables) {
+        variables.add(name);
+    }
+
+    @Override
+    Node bind(Map<String, Integer> slots) {
+        return new VariableNode(name, slots.get(name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
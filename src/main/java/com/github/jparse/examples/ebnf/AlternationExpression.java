@@ -24,26 +24,56 @@
 
 package com.github.jparse.examples.ebnf;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public final class AlternationExpression extends Expression {
 
-    private final Expression expression1;
-    private final Expression expression2;
+    private final Expression[] expressions;
+
+    public AlternationExpression(Expression... expressions) {
+        super(5 * 31 + Arrays.hashCode(expressions));
+        if (expressions.length < 2) {
+            throw new IllegalArgumentException("Expected at least two expressions");
+        }
+        this.expressions = expressions.clone();
+    }
+
+    public AlternationExpression(List<Expression> expressions) {
+        this(expressions.toArray(new Expression[expressions.size()]));
+    }
+
+    public List<Expression> getExpressions() {
+        return Collections.unmodifiableList(Arrays.asList(expressions));
+    }
+
+    public int getExpressionCount() {
+        return expressions.length;
+    }
 
-    public AlternationExpression(Expression expression1, Expression expression2) {
-        this.expression1 = expression1;
-        this.expression2 = expression2;
+    public Expression getExpression(int index) {
+        return expressions[index];
     }
 
-    public Expression getExpression1() {
-        return expression1;
+    @Override
+    int getChildCount() {
+        return expressions.length;
     }
 
-    public Expression getExpression2() {
-        return expression2;
+    @Override
+    Expression getChild(int index) {
+        return expressions[index];
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitAlternation(this);
     }
 
     @Override
-    public String toString() {
-        return '(' + expression1.toString() + ')' + '|' + '(' + expression2 + ')';
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof AlternationExpression && obj.hashCode() == hashCode() &&
+                Arrays.equals(((AlternationExpression) obj).expressions, expressions);
     }
 }
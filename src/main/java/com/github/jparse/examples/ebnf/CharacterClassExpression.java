@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.BitSet;
+
+public final class CharacterClassExpression extends Expression {
+
+    private final BitSet characters;
+
+    public CharacterClassExpression(BitSet characters) {
+        super(2 * 31 + characters.hashCode());
+        if (characters.isEmpty() || characters.length() > Character.MAX_VALUE + 1) {
+            throw new IllegalArgumentException("Invalid character class " + characters);
+        }
+        this.characters = (BitSet) characters.clone();
+    }
+
+    public BitSet getCharacters() {
+        return (BitSet) characters.clone();
+    }
+
+    public boolean contains(char c) {
+        return characters.get(c);
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitCharacterClass(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof CharacterClassExpression && obj.hashCode() == hashCode() &&
+                ((CharacterClassExpression) obj).characters.equals(characters);
+    }
+}
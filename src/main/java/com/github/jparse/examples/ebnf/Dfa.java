@@ -0,0 +1,403 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.Sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// A minimized DFA over character classes, stored as flat int tables. The automaton follows the interpreter's
+// terminals: whitespace may precede every terminal and is consumed where an option or an empty terminal matches
+// nothing. match returns the longest accepted prefix, which is what ordered choice finds for the rules that
+// GrammarAnalysis reports as regular.
+public final class Dfa {
+
+    private static final int MAX_STATES = 4096;
+    private static final int ASCII = 128;
+    private static final BitSet WHITESPACE = new BitSet();
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (Character.isWhitespace(c)) {
+                WHITESPACE.set(c);
+            }
+        }
+    }
+
+    private final int[] ascii;
+    private final char[] rangeStarts;
+    private final int[] rangeClasses;
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private Dfa(int[] ascii, char[] rangeStarts, int[] rangeClasses, int classCount, int[] transitions,
+                boolean[] accepting) {
+        this.ascii = ascii;
+        this.rangeStarts = rangeStarts;
+        this.rangeClasses = rangeClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    public static Dfa compile(Expression expression) {
+        Nfa nfa = new Nfa();
+        int[] fragment = nfa.fold(expression);
+        int start = fragment[0];
+        nfa.accept = fragment[1];
+        char[] rangeStarts = nfa.rangeStarts();
+        int[] rangeClasses = new int[rangeStarts.length];
+        Map<BitSet, Integer> signatures = new HashMap<>();
+        List<Integer> representatives = new ArrayList<>();
+        for (int i = 0; i < rangeStarts.length; i++) {
+            BitSet signature = nfa.signature(rangeStarts[i]);
+            Integer c = signatures.get(signature);
+            if (c == null) {
+                c = signatures.size();
+                signatures.put(signature, c);
+                representatives.add((int) rangeStarts[i]);
+            }
+            rangeClasses[i] = c;
+        }
+        int classCount = signatures.size();
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> indexes = new HashMap<>();
+        BitSet initial = nfa.closure(singleton(start));
+        states.add(initial);
+        indexes.put(initial, 0);
+        List<int[]> rows = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            int[] row = new int[classCount];
+            for (int c = 0; c < classCount; c++) {
+                BitSet next = nfa.closure(nfa.step(states.get(s), representatives.get(c)));
+                if (next.isEmpty()) {
+                    row[c] = -1;
+                    continue;
+                }
+                Integer index = indexes.get(next);
+                if (index == null) {
+                    if (states.size() == MAX_STATES) {
+                        throw new IllegalArgumentException("Too many DFA states for " + expression);
+                    }
+                    index = states.size();
+                    states.add(next);
+                    indexes.put(next, index);
+                }
+                row[c] = index;
+            }
+            rows.add(row);
+        }
+        boolean[] accepting = new boolean[states.size()];
+        for (int s = 0; s < accepting.length; s++) {
+            accepting[s] = states.get(s).get(nfa.accept);
+        }
+        return minimize(rows, accepting, rangeStarts, rangeClasses, classCount);
+    }
+
+    public int getStateCount() {
+        return accepting.length;
+    }
+
+    // Returns the end of the longest accepted prefix of input[start, end), or -1.
+    public int match(CharSequence input, int start, int end) {
+        int state = 0;
+        int last = accepting[0] ? start : -1;
+        for (int i = start; i < end; i++) {
+            state = transitions[state * classCount + classOf(input.charAt(i))];
+            if (state < 0) {
+                break;
+            }
+            if (accepting[state]) {
+                last = i + 1;
+            }
+        }
+        return last;
+    }
+
+    public int match(Sequence<Character> input) {
+        int state = 0;
+        int last = accepting[0] ? 0 : -1;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = transitions[state * classCount + classOf(input.at(i))];
+            if (state < 0) {
+                break;
+            }
+            if (accepting[state]) {
+                last = i + 1;
+            }
+        }
+        return last;
+    }
+
+    private int classOf(char c) {
+        if (c < ASCII) {
+            return ascii[c];
+        }
+        int index = Arrays.binarySearch(rangeStarts, c);
+        return rangeClasses[index >= 0 ? index : -index - 2];
+    }
+
+    // Moore's partition refinement: states stay in one block while they agree on acceptance and on the blocks of
+    // all their successors. The dead state is -1 throughout and the start state keeps number 0.
+    private static Dfa minimize(List<int[]> rows, boolean[] accepting, char[] rangeStarts, int[] rangeClasses,
+                                int classCount) {
+        int n = rows.size();
+        int[] blocks = new int[n];
+        for (int s = 0; s < n; s++) {
+            blocks[s] = accepting[s] ? 1 : 0;
+        }
+        int blockCount;
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] next = new int[n];
+            for (int s = 0; s < n; s++) {
+                List<Integer> signature = new ArrayList<>(classCount + 1);
+                signature.add(blocks[s]);
+                for (int target : rows.get(s)) {
+                    signature.add(target < 0 ? -1 : blocks[target]);
+                }
+                Integer block = signatures.get(signature);
+                if (block == null) {
+                    block = signatures.size();
+                    signatures.put(signature, block);
+                }
+                next[s] = block;
+            }
+            boolean stable = signatures.size() == countDistinct(blocks);
+            blocks = next;
+            blockCount = signatures.size();
+            if (stable) {
+                break;
+            }
+        }
+        int[] transitions = new int[blockCount * classCount];
+        boolean[] blockAccepting = new boolean[blockCount];
+        for (int s = 0; s < n; s++) {
+            int block = blocks[s];
+            blockAccepting[block] = accepting[s];
+            int[] row = rows.get(s);
+            for (int c = 0; c < classCount; c++) {
+                transitions[block * classCount + c] = row[c] < 0 ? -1 : blocks[row[c]];
+            }
+        }
+        int[] ascii = new int[ASCII];
+        for (int c = 0; c < ASCII; c++) {
+            int index = Arrays.binarySearch(rangeStarts, (char) c);
+            ascii[c] = rangeClasses[index >= 0 ? index : -index - 2];
+        }
+        return new Dfa(ascii, rangeStarts, rangeClasses, classCount, transitions, blockAccepting);
+    }
+
+    private static int countDistinct(int[] blocks) {
+        BitSet distinct = new BitSet();
+        for (int block : blocks) {
+            distinct.set(block);
+        }
+        return distinct.cardinality();
+    }
+
+    private static BitSet singleton(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    // A Thompson automaton whose edges are labelled with character sets.
+    private static final class Nfa extends ExpressionFolder<int[]> {
+
+        final List<List<Integer>> epsilons = new ArrayList<>();
+        final List<List<BitSet>> labels = new ArrayList<>();
+        final List<List<Integer>> targets = new ArrayList<>();
+        int accept;
+
+        int newState() {
+            epsilons.add(new ArrayList<Integer>());
+            labels.add(new ArrayList<BitSet>());
+            targets.add(new ArrayList<Integer>());
+            return epsilons.size() - 1;
+        }
+
+        void edge(int from, BitSet label, int to) {
+            labels.get(from).add(label);
+            targets.get(from).add(to);
+        }
+
+        int skipWhitespace(int from) {
+            int state = newState();
+            epsilons.get(from).add(state);
+            edge(state, WHITESPACE, state);
+            return state;
+        }
+
+        // Each node becomes a fragment {start, end} built over the fragments of its children.
+        @Override
+        public int[] visitTerminal(TerminalExpression expression) {
+            String terminal = expression.getTerminal();
+            int start = newState();
+            int state = skipWhitespace(start);
+            for (int i = 0; i < terminal.length(); i++) {
+                BitSet label = new BitSet();
+                label.set(terminal.charAt(i));
+                int next = newState();
+                edge(state, label, next);
+                state = next;
+            }
+            return new int[]{start, state};
+        }
+
+        @Override
+        public int[] visitCharacterClass(CharacterClassExpression expression) {
+            int start = newState();
+            int next = newState();
+            edge(skipWhitespace(start), expression.getCharacters(), next);
+            return new int[]{start, next};
+        }
+
+        @Override
+        public int[] visitIdentifier(IdentifierExpression expression) {
+            throw new IllegalArgumentException("Not a regular expression " + expression);
+        }
+
+        @Override
+        public int[] visitConcatenation(ConcatenationExpression expression) {
+            for (int i = 1; i < childCount(); i++) {
+                epsilons.get(child(i - 1)[1]).add(child(i)[0]);
+            }
+            return new int[]{child(0)[0], child(childCount() - 1)[1]};
+        }
+
+        @Override
+        public int[] visitAlternation(AlternationExpression expression) {
+            int start = newState();
+            int end = newState();
+            for (int i = 0; i < childCount(); i++) {
+                epsilons.get(start).add(child(i)[0]);
+                epsilons.get(child(i)[1]).add(end);
+            }
+            return new int[]{start, end};
+        }
+
+        @Override
+        public int[] visitOption(OptionExpression expression) {
+            int start = newState();
+            int end = newState();
+            epsilons.get(start).add(child(0)[0]);
+            epsilons.get(child(0)[1]).add(end);
+            epsilons.get(skipWhitespace(start)).add(end);
+            return new int[]{start, end};
+        }
+
+        @Override
+        public int[] visitRepetition(RepetitionExpression expression) {
+            int loop = newState();
+            epsilons.get(loop).add(child(0)[0]);
+            epsilons.get(child(0)[1]).add(loop);
+            return new int[]{loop, loop};
+        }
+
+        @Override
+        public int[] visitRepetition1(Repetition1Expression expression) {
+            int end = newState();
+            epsilons.get(child(0)[1]).add(end);
+            epsilons.get(end).add(child(0)[0]);
+            return new int[]{child(0)[0], end};
+        }
+
+        // The starts of the maximal character ranges on which every label is constant.
+        char[] rangeStarts() {
+            TreeSet<Integer> starts = new TreeSet<>();
+            starts.add(0);
+            for (List<BitSet> list : labels) {
+                for (BitSet label : list) {
+                    for (int c = label.nextSetBit(0); c >= 0; c = label.nextSetBit(c + 1)) {
+                        starts.add(c);
+                        c = label.nextClearBit(c);
+                        if (c <= Character.MAX_VALUE) {
+                            starts.add(c);
+                        }
+                    }
+                }
+            }
+            char[] result = new char[starts.size()];
+            int i = 0;
+            for (int start : starts) {
+                result[i++] = (char) start;
+            }
+            return result;
+        }
+
+        BitSet signature(char c) {
+            BitSet signature = new BitSet();
+            int i = 0;
+            for (List<BitSet> list : labels) {
+                for (BitSet label : list) {
+                    if (label.get(c)) {
+                        signature.set(i);
+                    }
+                    i++;
+                }
+            }
+            return signature;
+        }
+
+        BitSet step(BitSet states, int c) {
+            BitSet next = new BitSet();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                List<BitSet> list = labels.get(s);
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i).get(c)) {
+                        next.set(targets.get(s).get(i));
+                    }
+                }
+            }
+            return next;
+        }
+
+        BitSet closure(BitSet states) {
+            BitSet closure = (BitSet) states.clone();
+            List<Integer> pending = new ArrayList<>();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                pending.add(s);
+            }
+            while (!pending.isEmpty()) {
+                int s = pending.remove(pending.size() - 1);
+                for (int target : epsilons.get(s)) {
+                    if (!closure.get(target)) {
+                        closure.set(target);
+                        pending.add(target);
+                    }
+                }
+            }
+            return closure;
+        }
+    }
+}
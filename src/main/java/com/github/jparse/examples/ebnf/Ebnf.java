@@ -29,163 +29,440 @@ import com.github.jparse.Function;
 import com.github.jparse.Pair;
 import com.github.jparse.ParseResult;
 import com.github.jparse.Sequence;
+import com.github.jparse.examples.instrument.Instrumentation;
+import com.github.jparse.examples.text.MappedCharSequence;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 
-import static com.github.jparse.CharParsers.literal;
-import static com.github.jparse.CharParsers.pattern;
 import static com.github.jparse.Parsers.phrase;
-import static com.github.jparse.Sequences.fromCharSequence;
-import static com.github.jparse.StatefulParsers.log;
-import static com.github.jparse.StatefulParsers.memo;
 import static com.github.jparse.StatefulSequences.stateful;
+import static com.github.jparse.examples.text.TextParsers.lazy;
 
 public final class Ebnf {
 
-    private static final FluentParser<Character, Expression> quantExpr;
-    private static final FluentParser<Character, Expression> concatExpr;
-    private static final FluentParser<Character, Expression> altExpr;
-    private static final FluentParser<Character, Grammar> grammar;
+    private static final int CHUNK_SIZE = 1 << 16;
 
-    static {
-        Function<String, Identifier> newIdent = new Function<String, Identifier>() {
-            @Override
-            public Identifier apply(String arg) {
-                return new Identifier(arg);
-            }
-        };
-        Function<String, Expression> newTermExpr = new Function<String, Expression>() {
-            @Override
-            public Expression apply(String arg) {
-                return new TerminalExpression(arg);
-            }
-        };
-        Function<Identifier, Expression> newIdentExpr = new Function<Identifier, Expression>() {
-            @Override
-            public Expression apply(Identifier arg) {
-                return new IdentifierExpression(arg);
-            }
-        };
-        Function<Expression, Expression> newOptExpr = new Function<Expression, Expression>() {
-            @Override
-            public Expression apply(Expression arg) {
-                return new OptionExpression(arg);
-            }
-        };
-        Function<Expression, Expression> newRepExpr = new Function<Expression, Expression>() {
-            @Override
-            public Expression apply(Expression arg) {
-                return new RepetitionExpression(arg);
-            }
-        };
-        Function<Expression, Expression> newRep1Expr = new Function<Expression, Expression>() {
-            @Override
-            public Expression apply(Expression arg) {
-                return new Repetition1Expression(arg);
-            }
-        };
-        Function<Pair<Expression, Expression>, Expression> newAltExpr = new Function<Pair<Expression, Expression>,
-                Expression>() {
-            @Override
-            public Expression apply(Pair<Expression, Expression> arg) {
-                return new AlternationExpression(arg.getLeft(), arg.getRight());
+    // The factory of the parse running on this thread, set by FactoryScope.
+    private static final ThreadLocal<ExpressionFactory> expressions = new ThreadLocal<>();
+    private static final Map<Instrumentation, Parsers> instrumentedParsers = Collections.synchronizedMap(
+            new WeakHashMap<Instrumentation, Parsers>());
+
+    public static void main(String[] args) throws IOException {
+        boolean trace = args.length > 0 && args[0].equals("--trace");
+        String sequence = readFully(new InputStreamReader(Ebnf.class.getResourceAsStream("grammar")));
+        Grammar grammar;
+        try {
+            grammar = parse(sequence, trace);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        System.out.println(grammar);
+        if (args.length > (trace ? 1 : 0)) {
+            String start = grammar.getRules().iterator().next().getIdentifier().getName();
+            GrammarInterpreter interpreter = new GrammarInterpreter(GrammarOptimizer.optimize(grammar, start),
+                    trace ? Instrumentation.TRACE : Instrumentation.NONE);
+            for (String arg : Arrays.asList(args).subList(trace ? 1 : 0, args.length)) {
+                ParseResult<Character, ?> argResult = interpreter.parse(start, arg);
+                if (argResult.isSuccess()) {
+                    System.out.println(argResult.getResult());
+                } else {
+                    System.out.println(argResult.getMessage() + " at " + (arg.length() - argResult.getRest()
+                            .length()));
+                }
             }
-        };
-        Function<Pair<Expression, Expression>, Expression> newConcatExpr = new Function<Pair<Expression, Expression>,
-                Expression>() {
-            @Override
-            public Expression apply(Pair<Expression, Expression> arg) {
-                return new ConcatenationExpression(arg.getLeft(), arg.getRight());
+        }
+    }
+
+    public static Grammar parse(CharSequence sequence) {
+        return parse(sequence, false);
+    }
+
+    public static Grammar parse(CharSequence sequence, boolean trace) {
+        return parse(sequence, trace ? Instrumentation.TRACE : Instrumentation.NONE);
+    }
+
+    public static Grammar parse(CharSequence sequence, Instrumentation instrumentation) {
+        ParseResult<Token, ? extends Grammar> result = phrase(parsers(instrumentation).grammar).parse(
+                stateful(Lexer.tokenize(sequence)));
+        if (!result.isSuccess()) {
+            throw new IllegalArgumentException(
+                    result.getMessage() + " at " + offset(result.getRest(), sequence.length()));
+        }
+        return result.getResult();
+    }
+
+    public static Grammar parseParallel(CharSequence sequence) {
+        return parseParallel(sequence, ForkJoinPool.commonPool());
+    }
+
+    // Splits the input after rule-terminating ';'s and parses the chunks on the pool, each with its own lexer and
+    // sequences; the rules are merged back in input order and the first error in input order is reported.
+    public static Grammar parseParallel(CharSequence sequence, ForkJoinPool pool) {
+        int[] boundaries = Lexer.ruleBoundaries(sequence, CHUNK_SIZE);
+        FluentParser<Token, Rule> rule = new FactoryScope<>(DefaultParsers.parsers.rule, new ExpressionFactory());
+        ChunkTask task = new ChunkTask(sequence, boundaries, rule, 0, boundaries.length - 1);
+        if (boundaries.length > 2) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < task.results.size(); i++) {
+            if (task.errors[i] != null) {
+                throw task.errors[i];
             }
-        };
-        Function<Pair<Identifier, Expression>, Rule> newRule = new Function<Pair<Identifier, Expression>, Rule>() {
-            @Override
-            public Rule apply(Pair<Identifier, Expression> arg) {
-                return new Rule(arg.getLeft(), arg.getRight());
+            rules.addAll(task.results.get(i));
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException(Token.Kind.IDENTIFIER.getDescription() + " expected at " +
+                    sequence.length());
+        }
+        return new Grammar(rules);
+    }
+
+    public static void parse(CharSequence sequence, RuleHandler handler) {
+        parse(sequence, handler, Instrumentation.NONE);
+    }
+
+    public static void parse(CharSequence sequence, RuleHandler handler, Instrumentation instrumentation) {
+        Iterator<Rule> rules = rules(sequence, instrumentation);
+        while (rules.hasNext()) {
+            handler.handle(rules.next());
+        }
+    }
+
+    public static Iterator<Rule> rules(CharSequence sequence) {
+        return rules(sequence, Instrumentation.NONE);
+    }
+
+    public static Iterator<Rule> rules(CharSequence sequence, Instrumentation instrumentation) {
+        return new RuleIterator(new Lexer(sequence),
+                phrase(new FactoryScope<>(parsers(instrumentation).rule, new ExpressionFactory())));
+    }
+
+    // Lexes and parses the mapped file one rule at a time, so only the current rule's tokens are held and the file
+    // is indexed no further ahead than the lexer reads.
+    public static Grammar parse(Path path) throws IOException {
+        MappedCharSequence sequence = MappedCharSequence.open(path);
+        List<Rule> rules = new ArrayList<>();
+        Iterator<Rule> iterator = rules(sequence);
+        while (iterator.hasNext()) {
+            rules.add(iterator.next());
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException(Token.Kind.IDENTIFIER.getDescription() + " expected at " +
+                    sequence.length());
+        }
+        return new Grammar(rules);
+    }
+
+    static String readFully(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[8192];
+        int len;
+        while ((len = reader.read(buf)) != -1) {
+            sb.append(buf, 0, len);
+        }
+        return sb.toString();
+    }
+
+    static FluentParser<Token, Grammar> newGrammar(Instrumentation instrumentation) {
+        return new Parsers(instrumentation).grammar;
+    }
+
+    private static Parsers parsers(Instrumentation instrumentation) {
+        if (instrumentation == Instrumentation.NONE) {
+            return DefaultParsers.parsers;
+        }
+        synchronized (instrumentedParsers) {
+            Parsers p = instrumentedParsers.get(instrumentation);
+            if (p == null) {
+                p = new Parsers(instrumentation);
+                instrumentedParsers.put(instrumentation, p);
             }
-        };
-        Function<Collection<Rule>, Grammar> newGrammar = new Function<Collection<Rule>, Grammar>() {
+            return p;
+        }
+    }
+
+    private static int offset(Sequence<Token> rest, int end) {
+        return rest.length() > 0 ? rest.at(0).getOffset() : end;
+    }
+
+    private static FluentParser<Token, Token> token(final Token.Kind kind) {
+        return new FluentParser<Token, Token>() {
             @Override
-            public Grammar apply(Collection<Rule> arg) {
-                return new Grammar(arg);
+            public ParseResult<Token, ? extends Token> parse(Sequence<Token> sequence) {
+                if (sequence.length() > 0) {
+                    Token token = sequence.at(0);
+                    if (token.getKind() == kind) {
+                        return ParseResult.success(token, sequence.subSequence(1));
+                    }
+                }
+                return ParseResult.failure(kind.getDescription() + " expected", sequence);
             }
         };
-        FluentParser<Character, Expression> quantExprRef = new FluentParser<Character, Expression>() {
-            @Override
-            public ParseResult<Character, ? extends Expression> parse(Sequence<Character> sequence) {
-                return quantExpr.parse(sequence);
+    }
+
+    private static final class Parsers {
+
+        final FluentParser<Token, Expression> altExpr;
+        final FluentParser<Token, Rule> rule;
+        final FluentParser<Token, Grammar> grammar;
+
+        Parsers(final Instrumentation instrumentation) {
+            Function<Token, Identifier> newIdent = new Function<Token, Identifier>() {
+                @Override
+                public Identifier apply(Token arg) {
+                    return expressions.get().identifier(arg.getText());
+                }
+            };
+            Function<Token, Expression> newTermExpr = new Function<Token, Expression>() {
+                @Override
+                public Expression apply(Token arg) {
+                    return expressions.get().terminal(arg.getText());
+                }
+            };
+            Function<Identifier, Expression> newIdentExpr = new Function<Identifier, Expression>() {
+                @Override
+                public Expression apply(Identifier arg) {
+                    return expressions.get().identifierExpression(arg);
+                }
+            };
+            Function<Pair<Expression, List<Token>>, Expression> newQuantExpr = new Function<Pair<Expression,
+                    List<Token>>, Expression>() {
+                @Override
+                public Expression apply(Pair<Expression, List<Token>> arg) {
+                    ExpressionFactory factory = expressions.get();
+                    Expression expression = arg.getLeft();
+                    for (Token quantifier : arg.getRight()) {
+                        switch (quantifier.getKind()) {
+                        case QUESTION:
+                            expression = factory.option(expression);
+                            break;
+                        case STAR:
+                            expression = factory.repetition(expression);
+                            break;
+                        default:
+                            expression = factory.repetition1(expression);
+                            break;
+                        }
+                    }
+                    return expression;
+                }
+            };
+            Function<List<Expression>, Expression> newConcatExpr = new Function<List<Expression>, Expression>() {
+                @Override
+                public Expression apply(List<Expression> arg) {
+                    return arg.size() == 1 ? arg.get(0) : expressions.get().concatenation(arg);
+                }
+            };
+            Function<Pair<Expression, List<Expression>>, Expression> newAltExpr = new Function<Pair<Expression,
+                    List<Expression>>, Expression>() {
+                @Override
+                public Expression apply(Pair<Expression, List<Expression>> arg) {
+                    if (arg.getRight().isEmpty()) {
+                        return arg.getLeft();
+                    }
+                    List<Expression> alternatives = new ArrayList<>(arg.getRight().size() + 1);
+                    alternatives.add(arg.getLeft());
+                    alternatives.addAll(arg.getRight());
+                    return expressions.get().alternation(alternatives);
+                }
+            };
+            Function<Pair<Identifier, Expression>, Rule> newRule = new Function<Pair<Identifier, Expression>, Rule>() {
+                @Override
+                public Rule apply(Pair<Identifier, Expression> arg) {
+                    return new Rule(arg.getLeft(), arg.getRight());
+                }
+            };
+            FluentParser<Token, Expression> altExprRef = new FluentParser<Token, Expression>() {
+                @Override
+                public ParseResult<Token, ? extends Expression> parse(Sequence<Token> sequence) {
+                    return altExpr.parse(sequence);
+                }
+            };
+            FluentParser<Token, Identifier> ident = instrumentation.rule(
+                    token(Token.Kind.IDENTIFIER).map(newIdent), "ident");
+            FluentParser<Token, Expression> termExpr = instrumentation.rule(
+                    token(Token.Kind.TERMINAL).map(newTermExpr), "termExpr");
+            FluentParser<Token, Expression> identExpr = instrumentation.rule(ident.map(newIdentExpr), "identExpr");
+            FluentParser<Token, Expression> groupExpr = instrumentation.rule(token(Token.Kind.LEFT_PAREN)
+                    .thenRight(altExprRef)
+                    .thenLeft(token(Token.Kind.RIGHT_PAREN).asError()), "groupExpr");
+            FluentParser<Token, Expression> quantExpr = instrumentation.rule(
+                    instrumentation.choice(Arrays.asList(termExpr, identExpr, groupExpr), "quantExpr")
+                            .then(instrumentation.choice(Arrays.asList(token(Token.Kind.QUESTION),
+                                    token(Token.Kind.STAR), token(Token.Kind.PLUS)), "quantExpr").rep())
+                            .map(newQuantExpr), "quantExpr");
+            FluentParser<Token, Expression> concatExpr = instrumentation.rule(
+                    quantExpr.rep1().map(newConcatExpr), "concatExpr");
+            altExpr = instrumentation.rule(concatExpr.then(token(Token.Kind.BAR).thenRight(concatExpr).rep())
+                    .map(newAltExpr), "altExpr");
+            rule = instrumentation.rule(ident.thenLeft(token(Token.Kind.COLON).asError())
+                    .then(altExpr)
+                    .thenLeft(token(Token.Kind.SEMICOLON).asError())
+                    .map(newRule), "rule");
+            // streaming parses use rule alone
+            grammar = new FactoryScope<>(lazy(new Supplier<FluentParser<Token, Grammar>>() {
+                @Override
+                public FluentParser<Token, Grammar> get() {
+                    Function<Collection<Rule>, Grammar> newGrammar = new Function<Collection<Rule>, Grammar>() {
+                        @Override
+                        public Grammar apply(Collection<Rule> arg) {
+                            return new Grammar(arg);
+                        }
+                    };
+                    return instrumentation.rule(rule.rep1().map(newGrammar).asFailure(), "grammar");
+                }
+            }), null);
+        }
+    }
+
+    // Runs a parse with the given factory, or with a new one for every parse when it is null, so identical fragments
+    // are shared within one grammar and nothing outlives the grammars built from it. The streaming parses pass one
+    // factory for all the rules of an input.
+    private static final class FactoryScope<U> extends FluentParser<Token, U> {
+
+        private final FluentParser<Token, U> parser;
+        private final ExpressionFactory factory;
+
+        FactoryScope(FluentParser<Token, U> parser, ExpressionFactory factory) {
+            this.parser = parser;
+            this.factory = factory;
+        }
+
+        @Override
+        public ParseResult<Token, ? extends U> parse(Sequence<Token> sequence) {
+            ExpressionFactory previous = expressions.get();
+            expressions.set(factory != null ? factory : new ExpressionFactory());
+            try {
+                return parser.parse(sequence);
+            } finally {
+                if (previous != null) {
+                    expressions.set(previous);
+                } else {
+                    expressions.remove();
+                }
             }
-        };
-        FluentParser<Character, Expression> concatExprRef = new FluentParser<Character, Expression>() {
-            @Override
-            public ParseResult<Character, ? extends Expression> parse(Sequence<Character> sequence) {
-                return concatExpr.parse(sequence);
+        }
+    }
+
+    // Built on the first parse rather than when the class is loaded.
+    private static final class DefaultParsers {
+
+        static final Parsers parsers = new Parsers(Instrumentation.NONE);
+    }
+
+    // Lexes and parses one rule per step, so neither the tokens nor the rules of the whole input are held at once.
+    private static final class RuleIterator implements Iterator<Rule> {
+
+        private final Lexer lexer;
+        private final FluentParser<Token, Rule> rule;
+        private Rule next;
+
+        RuleIterator(Lexer lexer, FluentParser<Token, Rule> rule) {
+            this.lexer = lexer;
+            this.rule = rule;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                TokenSequence tokens = lexer.nextRule();
+                if (tokens == null) {
+                    return false;
+                }
+                ParseResult<Token, ? extends Rule> result = rule.parse(stateful(tokens));
+                if (!result.isSuccess()) {
+                    throw new IllegalArgumentException(
+                            result.getMessage() + " at " + offset(result.getRest(), lexer.getPosition()));
+                }
+                next = result.getResult();
             }
-        };
-        FluentParser<Character, Expression> altExprRef = new FluentParser<Character, Expression>() {
-            @Override
-            public ParseResult<Character, ? extends Expression> parse(Sequence<Character> sequence) {
-                return altExpr.parse(sequence);
+            return true;
+        }
+
+        @Override
+        public Rule next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
-        };
-        FluentParser<Character, ?> comments = log(pattern("/\\*.*?\\*/").rep().named("comments"));
-        FluentParser<Character, Identifier> ident = log(
-                comments.thenRight(pattern("^[A-Za-z][0-9A-Za-z_]*")).map(newIdent).named("ident"));
-        FluentParser<Character, Expression> termExpr = log(comments.thenRight(literal("'").thenRight(pattern("[^']*"))
-                .thenLeft(literal("'").asError())
-                .orelse(literal("\"").thenRight(pattern("[^\"]*")).thenLeft(literal("\"").asError())))
-                .map(newTermExpr).named("termExpr"));
-        FluentParser<Character, Expression> identExpr = log(ident.map(newIdentExpr).named("identExpr"));
-        FluentParser<Character, Expression> groupExpr = log(comments.thenRight(literal("("))
-                .thenRight(altExprRef)
-                .thenLeft(comments)
-                .thenLeft(literal(")").asError()).named("groupExpr"));
-        FluentParser<Character, Expression> optExpr = log(
-                quantExprRef.thenLeft(comments).thenLeft(literal("?")).map(newOptExpr).named("optExpr"));
-        FluentParser<Character, Expression> repExpr = log(
-                quantExprRef.thenLeft(comments).thenLeft(literal("*")).map(newRepExpr).named("repExpr"));
-        FluentParser<Character, Expression> rep1Expr = log(
-                quantExprRef.thenLeft(comments).thenLeft(literal("+")).map(newRep1Expr).named("rep1Expr"));
-        quantExpr = log(memo(optExpr.orelse(repExpr)
-                .orelse(rep1Expr).orelse(termExpr.orelse(identExpr).orelse(groupExpr))).named("quantExpr"));
-        concatExpr = log(
-                memo(concatExprRef.thenLeft(comments).then(quantExpr).map(newConcatExpr).orelse(quantExpr)).named(
-                        "concatExpr"));
-        altExpr = log(memo(altExprRef.thenLeft(comments)
-                .thenLeft(literal("|"))
-                .then(concatExpr)
-                .map(newAltExpr).orelse(concatExpr)).named("altExpr"));
-        FluentParser<Character, Rule> rule = log(ident.thenLeft(comments)
-                .thenLeft(literal(":").asError())
-                .then(altExpr)
-                .thenLeft(comments)
-                .thenLeft(literal(";").asError())
-                .map(newRule).named("rule"));
-        grammar = log(
-                rule.rep1().thenLeft(comments).thenLeft(pattern("\\s*")).map(newGrammar).asFailure().named("grammar"));
-    }
+            Rule rule = next;
+            next = null;
+            return rule;
+        }
 
-    public static void main(String[] args) throws IOException {
-        String sequence = readFully(new InputStreamReader(Ebnf.class.getResourceAsStream("grammar")));
-        ParseResult<Character, ? extends Grammar> result = phrase(grammar).parse(stateful(fromCharSequence(sequence)));
-        if (result.isSuccess()) {
-            Grammar grammar = result.getResult();
-            System.out.println(grammar);
-        } else {
-            System.out.println(result.getMessage() + " at " + (sequence.length() - result.getRest().length()));
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
     }
 
-    private static String readFully(Reader reader) throws IOException {
-        StringBuffer sb = new StringBuffer();
-        char[] buf = new char[1024];
-        int len;
-        while ((len = reader.read(buf)) != -1) {
-            sb.append(buf, 0, len);
+    // Tasks are never serialized; the fields that could not be are transient.
+    private static final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final transient List<List<Rule>> results;
+        final IllegalArgumentException[] errors;
+        private final transient CharSequence sequence;
+        private final int[] boundaries;
+        private final transient FluentParser<Token, Rule> rule;
+        private final int from;
+        private final int to;
+
+        ChunkTask(CharSequence sequence, int[] boundaries, FluentParser<Token, Rule> rule, int from, int to) {
+            this(sequence, boundaries, rule, from, to,
+                    new ArrayList<>(Collections.<List<Rule>>nCopies(to - from, null)),
+                    new IllegalArgumentException[to - from]);
+        }
+
+        private ChunkTask(CharSequence sequence, int[] boundaries, FluentParser<Token, Rule> rule, int from, int to,
+                          List<List<Rule>> results, IllegalArgumentException[] errors) {
+            this.sequence = sequence;
+            this.boundaries = boundaries;
+            this.rule = rule;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(sequence, boundaries, rule, from, middle, results, errors),
+                        new ChunkTask(sequence, boundaries, rule, middle, to, results, errors));
+                return;
+            }
+            List<Rule> rules = new ArrayList<>();
+            try {
+                Iterator<Rule> iterator = new RuleIterator(new Lexer(sequence, boundaries[from], boundaries[to]),
+                        phrase(rule));
+                while (iterator.hasNext()) {
+                    rules.add(iterator.next());
+                }
+            } catch (IllegalArgumentException e) {
+                errors[from] = e;
+            }
+            results.set(from, rules);
         }
-        return sb.toString();
     }
 }
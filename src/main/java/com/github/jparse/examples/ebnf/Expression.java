@@ -24,6 +24,36 @@
 
 package com.github.jparse.examples.ebnf;
 
+// Expressions are immutable values: equal trees are interchangeable, and the hash of a node is computed once from
+// the cached hashes of its children, so ExpressionFactory can share identical subtrees.
 public abstract class Expression {
 
+    private final int hash;
+
+    Expression(int hash) {
+        this.hash = hash;
+    }
+
+    public abstract <R> R accept(ExpressionVisitor<R> visitor);
+
+    // The direct subexpressions in order, for traversals that treat every kind of node alike.
+    int getChildCount() {
+        return 0;
+    }
+
+    Expression getChild(int index) {
+        throw new IndexOutOfBoundsException("No child " + index + " in " + this);
+    }
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public final String toString() {
+        StringBuilder sb = new StringBuilder();
+        ExpressionPrinter.print(this, sb);
+        return sb.toString();
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Hash-conses expressions: every node it returns is the canonical instance of its value, so identical subtrees of
+// the grammars built through one factory are shared. Canonical nodes are held weakly and the table is striped by
+// hash, so a factory can be shared by concurrent parses without keeping dead grammars alive.
+public final class ExpressionFactory {
+
+    private static final int STRIPES = 16;
+
+    private final List<Map<Object, WeakReference<Object>>> tables = new ArrayList<>(STRIPES);
+
+    public ExpressionFactory() {
+        for (int i = 0; i < STRIPES; i++) {
+            tables.add(new WeakHashMap<Object, WeakReference<Object>>());
+        }
+    }
+
+    public Identifier identifier(String name) {
+        return intern(new Identifier(name));
+    }
+
+    public TerminalExpression terminal(String terminal) {
+        return intern(new TerminalExpression(terminal));
+    }
+
+    public CharacterClassExpression characterClass(BitSet characters) {
+        return intern(new CharacterClassExpression(characters));
+    }
+
+    public IdentifierExpression identifierExpression(Identifier identifier) {
+        return intern(new IdentifierExpression(intern(identifier)));
+    }
+
+    IdentifierExpression identifierExpression(Identifier identifier, int ruleId) {
+        return intern(new IdentifierExpression(intern(identifier), ruleId));
+    }
+
+    public ConcatenationExpression concatenation(List<Expression> expressions) {
+        return intern(new ConcatenationExpression(expressions));
+    }
+
+    public AlternationExpression alternation(List<Expression> expressions) {
+        return intern(new AlternationExpression(expressions));
+    }
+
+    public OptionExpression option(Expression expression) {
+        return intern(new OptionExpression(expression));
+    }
+
+    public RepetitionExpression repetition(Expression expression) {
+        return intern(new RepetitionExpression(expression));
+    }
+
+    public Repetition1Expression repetition1(Expression expression) {
+        return intern(new Repetition1Expression(expression));
+    }
+
+    // Returns the canonical instance equal to value. Only the node itself is looked up; sharing below it depends on
+    // its children having come from this factory.
+    @SuppressWarnings("unchecked")
+    public <T> T intern(T value) {
+        int h = value.hashCode();
+        Map<Object, WeakReference<Object>> table = tables.get((h ^ h >>> 16) & STRIPES - 1);
+        synchronized (table) {
+            WeakReference<Object> reference = table.get(value);
+            Object canonical = reference == null ? null : reference.get();
+            if (canonical != null) {
+                return (T) canonical;
+            }
+            table.put(value, new WeakReference<Object>(value));
+            return value;
+        }
+    }
+}
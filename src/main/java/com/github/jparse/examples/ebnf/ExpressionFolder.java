@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Folds an expression bottom-up with an explicit stack, so the depth of an expression costs heap instead of call
+// stack. A node is visited once all of its children are folded, and the visit reads their results through child.
+// A folder is not reentrant: fold must not be called on it again from one of its own visits.
+abstract class ExpressionFolder<R> implements ExpressionVisitor<R> {
+
+    private final Deque<Object> pending = new ArrayDeque<>();
+    private final List<R> results = new ArrayList<>();
+    private int base;
+
+    R fold(Expression expression) {
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Expression) {
+                Expression e = (Expression) next;
+                pending.push(new Frame(e, results.size()));
+                for (int i = e.getChildCount() - 1; i >= 0; i--) {
+                    pending.push(e.getChild(i));
+                }
+            } else {
+                Frame frame = (Frame) next;
+                base = frame.base;
+                R result = frame.expression.accept(this);
+                results.subList(frame.base, results.size()).clear();
+                results.add(result);
+            }
+        }
+        return results.remove(results.size() - 1);
+    }
+
+    // The result of the index-th child of the node being visited.
+    R child(int index) {
+        return results.get(base + index);
+    }
+
+    int childCount() {
+        return results.size() - base;
+    }
+
+    private static final class Frame {
+
+        final Expression expression;
+        final int base;
+
+        Frame(Expression expression, int base) {
+            this.expression = expression;
+            this.base = base;
+        }
+    }
+}
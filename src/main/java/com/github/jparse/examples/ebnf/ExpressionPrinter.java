@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+// Prints with an explicit stack of pending expressions and separators, so deeply nested or very wide expressions
+// need neither deep recursion nor intermediate strings.
+final class ExpressionPrinter implements ExpressionVisitor<Void> {
+
+    private static final int ALTERNATION = 0;
+    private static final int CONCATENATION = 1;
+    private static final int POSTFIX = 2;
+
+    private final StringBuilder sb;
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    private ExpressionPrinter(StringBuilder sb) {
+        this.sb = sb;
+    }
+
+    static void print(Expression expression, StringBuilder sb) {
+        ExpressionPrinter printer = new ExpressionPrinter(sb);
+        printer.pending.push(expression);
+        while (!printer.pending.isEmpty()) {
+            Object next = printer.pending.pop();
+            if (next instanceof Expression) {
+                ((Expression) next).accept(printer);
+            } else {
+                sb.append((String) next);
+            }
+        }
+    }
+
+    @Override
+    public Void visitTerminal(TerminalExpression expression) {
+        appendTerminal(expression.getTerminal());
+        return null;
+    }
+
+    @Override
+    public Void visitCharacterClass(CharacterClassExpression expression) {
+        BitSet characters = expression.getCharacters();
+        int first = characters.nextSetBit(0);
+        sb.append('(');
+        for (int c = first; c >= 0; c = characters.nextSetBit(c + 1)) {
+            if (c != first) {
+                sb.append(" | ");
+            }
+            appendTerminal(String.valueOf((char) c));
+        }
+        sb.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierExpression expression) {
+        sb.append(expression.getIdentifier().getName());
+        return null;
+    }
+
+    @Override
+    public Void visitConcatenation(ConcatenationExpression expression) {
+        for (int i = expression.getExpressionCount() - 1; i >= 0; i--) {
+            push(expression.getExpression(i), CONCATENATION + 1);
+            if (i > 0) {
+                pending.push(" ");
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAlternation(AlternationExpression expression) {
+        for (int i = expression.getExpressionCount() - 1; i >= 0; i--) {
+            push(expression.getExpression(i), ALTERNATION + 1);
+            if (i > 0) {
+                pending.push(" | ");
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitOption(OptionExpression expression) {
+        pending.push("?");
+        push(expression.getExpression(), POSTFIX);
+        return null;
+    }
+
+    @Override
+    public Void visitRepetition(RepetitionExpression expression) {
+        pending.push("*");
+        push(expression.getExpression(), POSTFIX);
+        return null;
+    }
+
+    @Override
+    public Void visitRepetition1(Repetition1Expression expression) {
+        pending.push("+");
+        push(expression.getExpression(), POSTFIX);
+        return null;
+    }
+
+    private void push(Expression expression, int precedence) {
+        if (precedence(expression) < precedence) {
+            pending.push(")");
+            pending.push(expression);
+            pending.push("(");
+        } else {
+            pending.push(expression);
+        }
+    }
+
+    private void appendTerminal(String terminal) {
+        char quote = terminal.indexOf('"') >= 0 ? '\'' : '"';
+        sb.append(quote).append(terminal).append(quote);
+    }
+
+    private static int precedence(Expression expression) {
+        if (expression instanceof AlternationExpression) {
+            return ALTERNATION;
+        } else if (expression instanceof ConcatenationExpression) {
+            return CONCATENATION;
+        }
+        return POSTFIX;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rewrites an expression bottom-up. By default a node whose children all came back unchanged is kept as it is and
+// any other node is rebuilt over the rewritten children through the factory; a child rewritten to null makes its
+// parent null, which lets a rewrite give up on the whole expression.
+abstract class ExpressionRewriter extends ExpressionFolder<Expression> {
+
+    final ExpressionFactory factory;
+
+    ExpressionRewriter(ExpressionFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Expression visitTerminal(TerminalExpression expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitCharacterClass(CharacterClassExpression expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitIdentifier(IdentifierExpression expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitConcatenation(ConcatenationExpression expression) {
+        List<Expression> children = children();
+        return children == null ? null : unchanged(expression) ? expression : factory.concatenation(children);
+    }
+
+    @Override
+    public Expression visitAlternation(AlternationExpression expression) {
+        List<Expression> children = children();
+        return children == null ? null : unchanged(expression) ? expression : factory.alternation(children);
+    }
+
+    @Override
+    public Expression visitOption(OptionExpression expression) {
+        Expression e = child(0);
+        return e == null ? null : unchanged(expression) ? expression : factory.option(e);
+    }
+
+    @Override
+    public Expression visitRepetition(RepetitionExpression expression) {
+        Expression e = child(0);
+        return e == null ? null : unchanged(expression) ? expression : factory.repetition(e);
+    }
+
+    @Override
+    public Expression visitRepetition1(Repetition1Expression expression) {
+        Expression e = child(0);
+        return e == null ? null : unchanged(expression) ? expression : factory.repetition1(e);
+    }
+
+    // The rewritten children of the node being visited, or null when one of them is null.
+    List<Expression> children() {
+        List<Expression> children = new ArrayList<>(childCount());
+        for (int i = 0; i < childCount(); i++) {
+            Expression e = child(i);
+            if (e == null) {
+                return null;
+            }
+            children.add(e);
+        }
+        return children;
+    }
+
+    boolean unchanged(Expression expression) {
+        for (int i = 0; i < childCount(); i++) {
+            if (child(i) != expression.getChild(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
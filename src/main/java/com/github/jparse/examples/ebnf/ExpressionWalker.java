@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Visits the nodes of an expression top-down and left to right with an explicit stack of pending expressions. By
+// default every node pushes all of its children; a visit can push fewer to prune the walk, or stop it altogether.
+abstract class ExpressionWalker implements ExpressionVisitor<Void> {
+
+    private final Deque<Expression> pending = new ArrayDeque<>();
+    private boolean stopped;
+
+    // Returns false when a visit stopped the walk.
+    boolean walk(Expression expression) {
+        pending.push(expression);
+        while (!stopped && !pending.isEmpty()) {
+            pending.pop().accept(this);
+        }
+        pending.clear();
+        return !stopped;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    // Pushes the first count children of expression, so that they are visited in order.
+    void pushChildren(Expression expression, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            pending.push(expression.getChild(i));
+        }
+    }
+
+    @Override
+    public Void visitTerminal(TerminalExpression expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitCharacterClass(CharacterClassExpression expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierExpression expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitConcatenation(ConcatenationExpression expression) {
+        pushChildren(expression, expression.getExpressionCount());
+        return null;
+    }
+
+    @Override
+    public Void visitAlternation(AlternationExpression expression) {
+        pushChildren(expression, expression.getExpressionCount());
+        return null;
+    }
+
+    @Override
+    public Void visitOption(OptionExpression expression) {
+        pushChildren(expression, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitRepetition(RepetitionExpression expression) {
+        pushChildren(expression, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitRepetition1(Repetition1Expression expression) {
+        pushChildren(expression, 1);
+        return null;
+    }
+}
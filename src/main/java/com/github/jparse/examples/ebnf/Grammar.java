@@ -44,7 +44,7 @@ public final class Grammar {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (Rule rule : rules) {
-            sb.append(rule);
+            rule.appendTo(sb);
         }
         return sb.toString();
     }
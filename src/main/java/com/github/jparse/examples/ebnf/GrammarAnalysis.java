@@ -0,0 +1,724 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class GrammarAnalysis {
+
+    public static final int END = Character.MAX_VALUE + 1;
+
+    private static final int MAX_CLOSURE_SIZE = 1024;
+    private static final int MAX_CLOSURE_DEPTH = 256;
+
+    private final ExpressionFactory factory;
+    private final SymbolTable symbols;
+    private final boolean[] nullable;
+    private final BitSet[] firstSets;
+    private final BitSet[] followSets;
+    private final Map<String, Set<String>> leftmostReferences = new HashMap<>();
+    private final Set<String> leftRecursive = new HashSet<>();
+    private final Set<String> leftRecursionHeads = new LinkedHashSet<>();
+    private final Map<String, Expression> closures = new HashMap<>();
+    private final Map<String, Expression> regularExpressions = new LinkedHashMap<>();
+
+    public GrammarAnalysis(Grammar grammar) {
+        this(grammar, new ExpressionFactory());
+    }
+
+    // The resolved rules and every expression the analysis rewrites are built through factory.
+    GrammarAnalysis(Grammar grammar, ExpressionFactory factory) {
+        this.factory = factory;
+        symbols = new SymbolTable(grammar, factory);
+        nullable = new boolean[symbols.size()];
+        firstSets = new BitSet[symbols.size()];
+        followSets = new BitSet[symbols.size()];
+        computeNullable();
+        for (Rule rule : symbols.getRules()) {
+            Set<String> references = new LinkedHashSet<>();
+            collectLeftmostReferences(rule.getExpression(), references);
+            leftmostReferences.put(rule.getIdentifier().getName(), references);
+        }
+        computeLeftRecursion();
+        computeFirstSets();
+        computeFollowSets();
+        computeRegularRules();
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    ExpressionFactory getExpressionFactory() {
+        return factory;
+    }
+
+    public Collection<Rule> getRules() {
+        return symbols.getRules();
+    }
+
+    public Rule getRule(String name) {
+        return symbols.getRule(symbols.getId(name));
+    }
+
+    public boolean isNullable(String name) {
+        return nullable[symbols.getId(name)];
+    }
+
+    public boolean isNullable(Expression expression) {
+        return new ExpressionFolder<Boolean>() {
+            @Override
+            public Boolean visitTerminal(TerminalExpression expression) {
+                return expression.getTerminal().isEmpty();
+            }
+
+            @Override
+            public Boolean visitCharacterClass(CharacterClassExpression expression) {
+                return false;
+            }
+
+            @Override
+            public Boolean visitIdentifier(IdentifierExpression expression) {
+                return nullable[symbols.getId(expression)];
+            }
+
+            @Override
+            public Boolean visitConcatenation(ConcatenationExpression expression) {
+                for (int i = 0; i < childCount(); i++) {
+                    if (!child(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Boolean visitAlternation(AlternationExpression expression) {
+                for (int i = 0; i < childCount(); i++) {
+                    if (child(i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Boolean visitOption(OptionExpression expression) {
+                return true;
+            }
+
+            @Override
+            public Boolean visitRepetition(RepetitionExpression expression) {
+                return true;
+            }
+
+            @Override
+            public Boolean visitRepetition1(Repetition1Expression expression) {
+                return child(0);
+            }
+        }.fold(expression);
+    }
+
+    public BitSet getFirst(String name) {
+        return (BitSet) firstSets[symbols.getId(name)].clone();
+    }
+
+    public BitSet getFirst(Expression expression) {
+        BitSet first = new BitSet();
+        addFirst(expression, first);
+        return first;
+    }
+
+    public BitSet getFollow(String name) {
+        return (BitSet) followSets[symbols.getId(name)].clone();
+    }
+
+    // Returns the FIRST set of every alternative when the next character rules out at least one of them, or null
+    // when ordered choice has to try them all anyway.
+    public List<BitSet> getDispatchSets(List<Expression> alternatives) {
+        List<BitSet> firstSets = new ArrayList<>(alternatives.size());
+        for (Expression alternative : alternatives) {
+            if (isNullable(alternative)) {
+                return null;
+            }
+            firstSets.add(getFirst(alternative));
+        }
+        BitSet union = new BitSet();
+        for (BitSet first : firstSets) {
+            union.or(first);
+        }
+        for (BitSet first : firstSets) {
+            if (!first.equals(union)) {
+                return firstSets;
+            }
+        }
+        return null;
+    }
+
+    public Set<String> getLeftmostReferences(String name) {
+        getRule(name);
+        return Collections.unmodifiableSet(leftmostReferences.get(name));
+    }
+
+    public Set<String> getLeftmostReferences(Expression expression) {
+        Set<String> references = new LinkedHashSet<>();
+        collectLeftmostReferences(expression, references);
+        return references;
+    }
+
+    public boolean isLeftRecursive(String name) {
+        return leftRecursive.contains(name);
+    }
+
+    public boolean isLeftRecursionHead(String name) {
+        return leftRecursionHeads.contains(name);
+    }
+
+    public Set<String> getLeftRecursionHeads() {
+        return Collections.unmodifiableSet(leftRecursionHeads);
+    }
+
+    public boolean isMemoized(String name) {
+        return leftRecursionHeads.contains(name) || !leftRecursive.contains(name);
+    }
+
+    public boolean isRegular(String name) {
+        getRule(name);
+        return regularExpressions.containsKey(name);
+    }
+
+    // Returns the rule with every reference expanded and its direct left or right recursion turned into a
+    // repetition, or null when the rule is not regular or a longest-match scan could disagree with ordered choice.
+    public Expression getRegularExpression(String name) {
+        getRule(name);
+        return regularExpressions.get(name);
+    }
+
+    private void computeFirstSets() {
+        for (int id = 0; id < firstSets.length; id++) {
+            firstSets[id] = new BitSet();
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (int id = 0; id < firstSets.length; id++) {
+                Rule rule = symbols.getRule(id);
+                BitSet first = firstSets[id];
+                int cardinality = first.cardinality();
+                addFirst(rule.getExpression(), first);
+                changed |= first.cardinality() != cardinality;
+            }
+        } while (changed);
+    }
+
+    private void addFirst(Expression expression, final BitSet first) {
+        new LeftmostWalker() {
+            @Override
+            public Void visitTerminal(TerminalExpression expression) {
+                String terminal = expression.getTerminal();
+                if (!terminal.isEmpty()) {
+                    first.set(terminal.charAt(0));
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitCharacterClass(CharacterClassExpression expression) {
+                first.or(expression.getCharacters());
+                return null;
+            }
+
+            @Override
+            public Void visitIdentifier(IdentifierExpression expression) {
+                first.or(firstSets[symbols.getId(expression)]);
+                return null;
+            }
+        }.walk(expression);
+    }
+
+    private void computeFollowSets() {
+        for (int id = 0; id < followSets.length; id++) {
+            followSets[id] = new BitSet();
+        }
+        if (followSets.length > 0) {
+            followSets[0].set(END);
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (int id = 0; id < followSets.length; id++) {
+                changed |= addFollow(symbols.getRule(id).getExpression(), (BitSet) followSets[id].clone());
+            }
+        } while (changed);
+    }
+
+    private boolean addFollow(Expression expression, BitSet follow) {
+        FollowUpdate update = new FollowUpdate();
+        update.walk(expression, follow);
+        return update.changed;
+    }
+
+    // A rule is scanned as a DFA only if its closure is LL(1) within itself: alternatives that cannot match nothing
+    // and start with distinct characters, and optional or repeated parts that cannot match nothing and start with
+    // characters that cannot follow them. Every decision of ordered choice and of greedy repetition is then forced
+    // by the next non-whitespace character, and the one match ordered choice finds is the longest one. Closures over
+    // MAX_CLOSURE_SIZE nodes are not scanned, since references expand into a copy per use, and neither are rules that
+    // reach others through chains of more than MAX_CLOSURE_DEPTH references, which bounds the recursion of closure.
+    private void computeRegularRules() {
+        for (Rule rule : symbols.getRules()) {
+            String name = rule.getIdentifier().getName();
+            Expression closure = closure(name, new HashSet<String>());
+            if (closure != null && hasNoWhitespace(closure) && isDeterministic(closure, new BitSet())) {
+                regularExpressions.put(name, closure);
+            }
+        }
+    }
+
+    private Expression closure(String name, Set<String> visiting) {
+        if (closures.containsKey(name)) {
+            return closures.get(name);
+        }
+        if (visiting.size() >= MAX_CLOSURE_DEPTH || !visiting.add(name)) {
+            return null;
+        }
+        Expression expression = GrammarOptimizer.simplify(getRule(name).getExpression(), factory);
+        expression = GrammarOptimizer.removeLeftRecursion(name, expression, this);
+        expression = removeRightRecursion(name, expression);
+        Expression closure = expression == null ? null : expandReferences(name, expression, visiting);
+        if (closure != null && size(closure, MAX_CLOSURE_SIZE) > MAX_CLOSURE_SIZE) {
+            closure = null;
+        }
+        if (closure != null) {
+            closure = removeShadowedOptions(closure);
+        }
+        visiting.remove(name);
+        closures.put(name, closure);
+        return closure;
+    }
+
+    private Expression expandReferences(final String name, Expression expression, final Set<String> visiting) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitIdentifier(IdentifierExpression expression) {
+                String reference = expression.getIdentifier().getName();
+                return reference.equals(name) ? null : closure(reference, visiting);
+            }
+        }.fold(expression);
+    }
+
+    // Drops the x branch of an alternative x? y when an earlier alternative is x followed only by nullable parts:
+    // whenever x matches, that alternative succeeds first, so ordered choice can only take the y branch. This is
+    // what lets digits ('.' digits)? | digits? '.' digits pass as digits ('.' digits)? | '.' digits.
+    private Expression removeShadowedOptions(Expression expression) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitAlternation(AlternationExpression expression) {
+                List<Expression> alternatives = children();
+                if (alternatives == null) {
+                    return null;
+                }
+                boolean changed = false;
+                for (int i = 1; i < alternatives.size(); i++) {
+                    List<Expression> elements = elements(alternatives.get(i));
+                    Expression first = elements.get(0);
+                    if (elements.size() > 1 && first instanceof OptionExpression && isShadowed(
+                            alternatives.subList(0, i), elements(((OptionExpression) first).getExpression()))) {
+                        List<Expression> rest = elements.subList(1, elements.size());
+                        alternatives.set(i, rest.size() == 1 ? rest.get(0) : factory.concatenation(rest));
+                        changed = true;
+                    }
+                }
+                return !changed && unchanged(expression) ? expression : factory.alternation(alternatives);
+            }
+        }.fold(expression);
+    }
+
+    private boolean isShadowed(List<Expression> alternatives, List<Expression> prefix) {
+        for (Expression alternative : alternatives) {
+            List<Expression> elements = elements(alternative);
+            if (elements.size() >= prefix.size() && elements.subList(0, prefix.size()).equals(prefix) &&
+                    isNullable(elements.subList(prefix.size(), elements.size()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isNullable(List<Expression> expressions) {
+        for (Expression expression : expressions) {
+            if (!isNullable(expression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The parts of an expression read as a concatenation, with nested concatenations spliced in.
+    private static List<Expression> elements(Expression expression) {
+        List<Expression> elements = new ArrayList<>();
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expression e = pending.pop();
+            if (e instanceof ConcatenationExpression) {
+                for (int i = e.getChildCount() - 1; i >= 0; i--) {
+                    pending.push(e.getChild(i));
+                }
+            } else {
+                elements.add(e);
+            }
+        }
+        return elements;
+    }
+
+    // Counts the nodes of an expanded closure, stopping once the count passes limit. Closures of referenced rules are
+    // shared rather than copied, so the tree can be far larger than the objects it is built from.
+    static int size(Expression expression, int limit) {
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        int size = 0;
+        while (!pending.isEmpty() && size <= limit) {
+            Expression e = pending.pop();
+            size++;
+            for (int i = 0; i < e.getChildCount(); i++) {
+                pending.push(e.getChild(i));
+            }
+        }
+        return size;
+    }
+
+    // Rewrites a : x a | y a | b into (x | y)* b. Any other self-reference is left for expandReferences to reject.
+    private Expression removeRightRecursion(String name, Expression expression) {
+        List<Expression> alternatives = expression instanceof AlternationExpression ?
+                ((AlternationExpression) expression).getExpressions() : Collections.singletonList(expression);
+        List<Expression> heads = new ArrayList<>();
+        List<Expression> bases = new ArrayList<>();
+        for (Expression alternative : alternatives) {
+            if (alternative instanceof ConcatenationExpression) {
+                List<Expression> expressions = ((ConcatenationExpression) alternative).getExpressions();
+                Expression last = expressions.get(expressions.size() - 1);
+                if (last instanceof IdentifierExpression && ((IdentifierExpression) last).getIdentifier().getName()
+                        .equals(name)) {
+                    List<Expression> rest = expressions.subList(0, expressions.size() - 1);
+                    Expression head = rest.size() == 1 ? rest.get(0) : factory.concatenation(rest);
+                    if (isNullable(head)) {
+                        return null;
+                    }
+                    heads.add(head);
+                    continue;
+                }
+            }
+            bases.add(alternative);
+        }
+        if (heads.isEmpty()) {
+            return expression;
+        }
+        if (bases.isEmpty()) {
+            return null;
+        }
+        Expression head = heads.size() == 1 ? heads.get(0) : factory.alternation(heads);
+        Expression base = bases.size() == 1 ? bases.get(0) : factory.alternation(bases);
+        Expression repetition = factory.repetition(head);
+        return GrammarOptimizer.simplify(factory.concatenation(Arrays.asList(repetition, base)), factory);
+    }
+
+    // Terminals skip the whitespace before them, so whitespace inside a terminal would make that skip ambiguous.
+    private static boolean hasNoWhitespace(Expression expression) {
+        return new ExpressionWalker() {
+            @Override
+            public Void visitTerminal(TerminalExpression expression) {
+                String terminal = expression.getTerminal();
+                for (int i = 0; i < terminal.length(); i++) {
+                    if (Character.isWhitespace(terminal.charAt(i))) {
+                        stop();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitCharacterClass(CharacterClassExpression expression) {
+                BitSet characters = expression.getCharacters();
+                for (int c = characters.nextSetBit(0); c >= 0; c = characters.nextSetBit(c + 1)) {
+                    if (Character.isWhitespace(c)) {
+                        stop();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitIdentifier(IdentifierExpression expression) {
+                stop();
+                return null;
+            }
+        }.walk(expression);
+    }
+
+    private boolean isDeterministic(Expression expression, BitSet follow) {
+        return new FollowWalker() {
+            @Override
+            public Void visitAlternation(AlternationExpression expression) {
+                BitSet union = new BitSet();
+                for (Expression e : expression.getExpressions()) {
+                    BitSet first = getFirst(e);
+                    if (isNullable(e) || first.intersects(union)) {
+                        stop();
+                        return null;
+                    }
+                    union.or(first);
+                }
+                return super.visitAlternation(expression);
+            }
+
+            @Override
+            public Void visitOption(OptionExpression expression) {
+                return isOptional(expression.getExpression()) ? super.visitOption(expression) : null;
+            }
+
+            @Override
+            public Void visitRepetition(RepetitionExpression expression) {
+                return isOptional(expression.getExpression()) ? super.visitRepetition(expression) : null;
+            }
+
+            @Override
+            public Void visitRepetition1(Repetition1Expression expression) {
+                return isOptional(expression.getExpression()) ? super.visitRepetition1(expression) : null;
+            }
+
+            // Whether matching expression or skipping it is decided by the next character.
+            private boolean isOptional(Expression expression) {
+                if (isNullable(expression) || getFirst(expression).intersects(follow)) {
+                    stop();
+                    return false;
+                }
+                return true;
+            }
+        }.walk(expression, follow);
+    }
+
+    private void computeNullable() {
+        boolean changed;
+        do {
+            changed = false;
+            for (int id = 0; id < nullable.length; id++) {
+                if (!nullable[id] && isNullable(symbols.getRule(id).getExpression())) {
+                    nullable[id] = true;
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    private void collectLeftmostReferences(Expression expression, final Set<String> references) {
+        new LeftmostWalker() {
+            @Override
+            public Void visitIdentifier(IdentifierExpression expression) {
+                references.add(expression.getIdentifier().getName());
+                return null;
+            }
+        }.walk(expression);
+    }
+
+    // Every cycle of leftmost references contains a back edge of a depth-first search, so the targets of the back
+    // edges are enough to grow left-recursive seeds; the other rules of a cycle must not be memoized, otherwise
+    // their failed first attempt would stay in the memo table while the head grows.
+    private void computeLeftRecursion() {
+        Set<String> visited = new HashSet<>();
+        for (Rule rule : symbols.getRules()) {
+            String name = rule.getIdentifier().getName();
+            if (!visited.contains(name)) {
+                findBackEdges(name, visited, new LinkedHashSet<String>());
+            }
+        }
+        for (Rule rule : symbols.getRules()) {
+            String name = rule.getIdentifier().getName();
+            if (reaches(name, name)) {
+                leftRecursive.add(name);
+            }
+        }
+    }
+
+    private void findBackEdges(String name, Set<String> visited, Set<String> path) {
+        visited.add(name);
+        path.add(name);
+        for (String reference : leftmostReferences.get(name)) {
+            if (path.contains(reference)) {
+                leftRecursionHeads.add(reference);
+            } else if (!visited.contains(reference)) {
+                findBackEdges(reference, visited, path);
+            }
+        }
+        path.remove(name);
+    }
+
+    private boolean reaches(String from, String to) {
+        Set<String> visited = new HashSet<>();
+        List<String> pending = new ArrayList<>(leftmostReferences.get(from));
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            if (name.equals(to)) {
+                return true;
+            }
+            if (visited.add(name)) {
+                pending.addAll(leftmostReferences.get(name));
+            }
+        }
+        return false;
+    }
+
+    // Walks the parts of an expression that can match its first character: a concatenation is only walked up to
+    // its first part that cannot match nothing.
+    private abstract class LeftmostWalker extends ExpressionWalker {
+
+        @Override
+        public Void visitConcatenation(ConcatenationExpression expression) {
+            int count = 1;
+            while (count < expression.getExpressionCount() && isNullable(expression.getExpression(count - 1))) {
+                count++;
+            }
+            pushChildren(expression, count);
+            return null;
+        }
+    }
+
+    // Walks an expression top-down, with follow holding the characters that can come after the node being visited,
+    // given those that can come after the whole expression. Visits must not modify follow.
+    private abstract class FollowWalker implements ExpressionVisitor<Void> {
+
+        private final Deque<Expression> pending = new ArrayDeque<>();
+        private final Deque<BitSet> follows = new ArrayDeque<>();
+        private boolean stopped;
+        BitSet follow;
+
+        // Returns false when a visit stopped the walk.
+        boolean walk(Expression expression, BitSet follow) {
+            push(expression, follow);
+            while (!stopped && !pending.isEmpty()) {
+                this.follow = follows.pop();
+                pending.pop().accept(this);
+            }
+            return !stopped;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        private void push(Expression expression, BitSet follow) {
+            pending.push(expression);
+            follows.push(follow);
+        }
+
+        @Override
+        public Void visitTerminal(TerminalExpression expression) {
+            return null;
+        }
+
+        @Override
+        public Void visitCharacterClass(CharacterClassExpression expression) {
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierExpression expression) {
+            return null;
+        }
+
+        @Override
+        public Void visitConcatenation(ConcatenationExpression expression) {
+            BitSet next = follow;
+            for (int i = expression.getExpressionCount() - 1; i >= 0; i--) {
+                Expression e = expression.getExpression(i);
+                push(e, next);
+                BitSet first = getFirst(e);
+                if (isNullable(e)) {
+                    first.or(next);
+                }
+                next = first;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAlternation(AlternationExpression expression) {
+            for (int i = expression.getExpressionCount() - 1; i >= 0; i--) {
+                push(expression.getExpression(i), follow);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitOption(OptionExpression expression) {
+            push(expression.getExpression(), follow);
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition(RepetitionExpression expression) {
+            pushRepeated(expression.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition1(Repetition1Expression expression) {
+            pushRepeated(expression.getExpression());
+            return null;
+        }
+
+        private void pushRepeated(Expression expression) {
+            BitSet repeatedFollow = getFirst(expression);
+            repeatedFollow.or(follow);
+            push(expression, repeatedFollow);
+        }
+    }
+
+    private final class FollowUpdate extends FollowWalker {
+
+        boolean changed;
+
+        @Override
+        public Void visitIdentifier(IdentifierExpression expression) {
+            BitSet ruleFollow = followSets[symbols.getId(expression)];
+            int cardinality = ruleFollow.cardinality();
+            ruleFollow.or(follow);
+            changed |= ruleFollow.cardinality() != cardinality;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.FluentParser;
+import com.github.jparse.Function;
+import com.github.jparse.ParseResult;
+import com.github.jparse.Sequence;
+import com.github.jparse.examples.instrument.Instrumentation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.github.jparse.examples.text.TextParsers.lazy;
+import static com.github.jparse.examples.text.TextParsers.literal;
+import static com.github.jparse.examples.text.TextParsers.pattern;
+
+public final class GrammarInterpreter {
+
+    private static final Function<Object, Object> singletonList = new Function<Object, Object>() {
+        @Override
+        public Object apply(Object arg) {
+            return Collections.singletonList(arg);
+        }
+    };
+    private static final Function<String, Object> emptyList = new Function<String, Object>() {
+        @Override
+        public Object apply(String arg) {
+            return Collections.emptyList();
+        }
+    };
+
+    private final GrammarAnalysis analysis;
+    private final Instrumentation instrumentation;
+    private final SymbolTable symbols;
+    private final List<FluentParser<Character, Object>> parsers;
+
+    public GrammarInterpreter(Grammar grammar) {
+        this(grammar, Instrumentation.NONE);
+    }
+
+    // Only the analysis runs up front. Each rule's parser, and its DFA when the rule is regular, is built on the
+    // rule's first use, so a large grammar only pays for the rules a parse actually reaches.
+    public GrammarInterpreter(Grammar grammar, Instrumentation instrumentation) {
+        analysis = new GrammarAnalysis(grammar);
+        symbols = analysis.getSymbolTable();
+        this.instrumentation = instrumentation;
+        int size = symbols.size();
+        parsers = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            final int index = id;
+            parsers.add(lazy(new Supplier<FluentParser<Character, Object>>() {
+                @Override
+                public FluentParser<Character, Object> get() {
+                    return newParser(index);
+                }
+            }));
+        }
+    }
+
+    public GrammarAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    public FluentParser<Character, Object> getParser(String name) {
+        return parsers.get(symbols.getId(name));
+    }
+
+    public ParseResult<Character, ?> parse(String name, CharSequence input) {
+        return getParser(name).phrase().parse(instrumentation.input(input));
+    }
+
+    private FluentParser<Character, Object> newParser(int id) {
+        String name = symbols.getName(id);
+        Expression regular = analysis.getRegularExpression(name);
+        Dfa dfa = regular == null ? null : compileDfa(regular);
+        if (dfa != null) {
+            return instrumentation.rule(new DfaParser(dfa, name), name);
+        }
+        FluentParser<Character, Object> parser = toParser(symbols.getRule(id).getExpression(), name);
+        return analysis.isMemoized(name) ? instrumentation.memoRule(parser, name) : instrumentation.rule(parser, name);
+    }
+
+    private FluentParser<Character, Object> toParser(Expression expression, String name) {
+        return new ParserBuilder(name).fold(flattenAlternations(expression, analysis.getExpressionFactory()));
+    }
+
+    private static String characterClass(CharacterClassExpression expression) {
+        BitSet characters = expression.getCharacters();
+        StringBuilder sb = new StringBuilder("[");
+        for (int c = characters.nextSetBit(0); c >= 0; c = characters.nextSetBit(c + 1)) {
+            int last = characters.nextClearBit(c) - 1;
+            sb.append(String.format("\\u%04x", c));
+            if (last > c) {
+                sb.append('-').append(String.format("\\u%04x", last));
+            }
+            c = last;
+        }
+        return sb.append(']').toString();
+    }
+
+    // Splices nested alternations into their parents, so that one choice sees all the alternatives it dispatches on.
+    private static Expression flattenAlternations(Expression expression, ExpressionFactory factory) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitAlternation(AlternationExpression expression) {
+                List<Expression> expressions = children();
+                for (int i = expressions.size() - 1; i >= 0; i--) {
+                    Expression e = expressions.get(i);
+                    if (e instanceof AlternationExpression) {
+                        expressions.remove(i);
+                        expressions.addAll(i, ((AlternationExpression) e).getExpressions());
+                    }
+                }
+                return expressions.size() == expression.getExpressionCount() && unchanged(expression) ? expression :
+                        factory.alternation(expressions);
+            }
+        }.fold(expression);
+    }
+
+    // A regular rule whose DFA would have too many states is left to the combinator parser.
+    private static Dfa compileDfa(Expression regular) {
+        try {
+            return Dfa.compile(regular);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FluentParser<Character, Object> widen(FluentParser<Character, ?> parser) {
+        return (FluentParser<Character, Object>) parser;
+    }
+
+    // Scans a regular rule in one pass over its DFA. The result is the matched input without its leading whitespace,
+    // as a view of the sequence rather than a copy; it does not reflect the rule's structure the way the combinator
+    // parsers' pairs and lists do, since only the end of the match is known.
+    private static final class DfaParser extends FluentParser<Character, Object> {
+
+        private final Dfa dfa;
+        private final String message;
+
+        DfaParser(Dfa dfa, String name) {
+            this.dfa = dfa;
+            message = name + " expected";
+        }
+
+        @Override
+        public ParseResult<Character, ?> parse(Sequence<Character> sequence) {
+            int end = sequence instanceof CharSequence ? dfa.match((CharSequence) sequence, 0, sequence.length()) :
+                    dfa.match(sequence);
+            if (end < 0) {
+                return ParseResult.failure(message, sequence);
+            }
+            int start = 0;
+            while (start < end && Character.isWhitespace(sequence.at(start))) {
+                start++;
+            }
+            return ParseResult.success(sequence.subSequence(start, end), sequence.subSequence(end));
+        }
+    }
+
+    // Skips whitespace like the terminals do, then tries only the alternatives whose FIRST sets contain the next
+    // character, in their original order. A character outside every FIRST set fails at once; only an input with
+    // nothing but whitespace left falls back to the full ordered choice.
+    private final class DispatchParser extends FluentParser<Character, Object> {
+
+        private static final int ASCII = 128;
+
+        private final FluentParser<?, ?>[] ascii = new FluentParser<?, ?>[ASCII];
+        private final Map<Character, FluentParser<Character, Object>> others = new HashMap<>();
+        private final FluentParser<Character, Object> fallback;
+
+        DispatchParser(List<FluentParser<Character, Object>> alternatives, List<BitSet> firstSets,
+                       FluentParser<Character, Object> fallback, String name) {
+            this.fallback = fallback;
+            BitSet union = new BitSet();
+            for (BitSet first : firstSets) {
+                union.or(first);
+            }
+            Map<List<Integer>, FluentParser<Character, Object>> choices = new HashMap<>();
+            for (int c = union.nextSetBit(0); c >= 0 && c <= Character.MAX_VALUE; c = union.nextSetBit(c + 1)) {
+                List<Integer> candidates = new ArrayList<>();
+                for (int i = 0; i < firstSets.size(); i++) {
+                    if (firstSets.get(i).get(c)) {
+                        candidates.add(i);
+                    }
+                }
+                FluentParser<Character, Object> choice = choices.get(candidates);
+                if (choice == null) {
+                    List<FluentParser<Character, Object>> parsers = new ArrayList<>();
+                    for (int i : candidates) {
+                        parsers.add(alternatives.get(i));
+                    }
+                    choice = instrumentation.choice(parsers, name);
+                    choices.put(candidates, choice);
+                }
+                if (c < ASCII) {
+                    ascii[c] = choice;
+                } else {
+                    others.put((char) c, choice);
+                }
+            }
+        }
+
+        @Override
+        public ParseResult<Character, ?> parse(Sequence<Character> sequence) {
+            int length = sequence.length();
+            int index = 0;
+            while (index < length && Character.isWhitespace(sequence.at(index))) {
+                index++;
+            }
+            if (index == length) {
+                return fallback.parse(sequence);
+            }
+            char c = sequence.at(index);
+            FluentParser<Character, Object> choice = c < ASCII ? ascii(c) : others.get(c);
+            if (choice == null) {
+                return ParseResult.failure("unexpected '" + c + "'", sequence);
+            }
+            return choice.parse(sequence);
+        }
+
+        @SuppressWarnings("unchecked")
+        private FluentParser<Character, Object> ascii(char c) {
+            return (FluentParser<Character, Object>) ascii[c];
+        }
+    }
+
+    // Builds the combinator parser of an expression bottom-up; alternations must have been flattened.
+    private final class ParserBuilder extends ExpressionFolder<FluentParser<Character, Object>> {
+
+        private final String name;
+
+        ParserBuilder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitTerminal(TerminalExpression expression) {
+            return widen(literal(expression.getTerminal()));
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitCharacterClass(CharacterClassExpression expression) {
+            return widen(pattern(characterClass(expression)));
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitIdentifier(IdentifierExpression expression) {
+            return parsers.get(symbols.getId(expression));
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitConcatenation(ConcatenationExpression expression) {
+            FluentParser<Character, Object> parser = child(0);
+            for (int i = 1; i < childCount(); i++) {
+                parser = widen(parser.then(child(i)));
+            }
+            return parser;
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitAlternation(AlternationExpression expression) {
+            List<FluentParser<Character, Object>> alternatives = new ArrayList<>(childCount());
+            for (int i = 0; i < childCount(); i++) {
+                alternatives.add(child(i));
+            }
+            FluentParser<Character, Object> choice = instrumentation.choice(alternatives, name);
+            List<BitSet> firstSets = analysis.getDispatchSets(expression.getExpressions());
+            return firstSets != null ? new DispatchParser(alternatives, firstSets, choice, name) : choice;
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitOption(OptionExpression expression) {
+            return instrumentation.choice(Arrays.asList(widen(child(0).map(singletonList)),
+                    widen(literal("").map(emptyList))), name);
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitRepetition(RepetitionExpression expression) {
+            return widen(child(0).rep());
+        }
+
+        @Override
+        public FluentParser<Character, Object> visitRepetition1(Repetition1Expression expression) {
+            return widen(child(0).rep1());
+        }
+    }
+}
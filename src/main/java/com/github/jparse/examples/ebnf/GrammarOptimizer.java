@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class GrammarOptimizer {
+
+    private static final int INLINE_LIMIT = 8;
+
+    private GrammarOptimizer() {
+    }
+
+    public static Grammar optimize(Grammar grammar) {
+        if (grammar.getRules().isEmpty()) {
+            return grammar;
+        }
+        return optimize(grammar, grammar.getRules().iterator().next().getIdentifier().getName());
+    }
+
+    // Every node the optimizer builds comes from one factory per call, so the rewritten rules share their fragments.
+    public static Grammar optimize(Grammar grammar, String start) {
+        ExpressionFactory factory = new ExpressionFactory();
+        GrammarAnalysis analysis = new GrammarAnalysis(grammar, factory);
+        analysis.getRule(start);
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        for (Rule rule : analysis.getRules()) {
+            rules.put(rule.getIdentifier().getName(), new Rule(rule.getIdentifier(),
+                    simplify(rule.getExpression(), factory)));
+        }
+        analysis = new GrammarAnalysis(new Grammar(rules.values()), factory);
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            Rule rule = entry.getValue();
+            entry.setValue(new Rule(rule.getIdentifier(), removeLeftRecursion(entry.getKey(), rule.getExpression(),
+                    analysis)));
+        }
+        inline(rules, factory);
+        Set<String> reachable = new HashSet<>();
+        List<String> pending = new ArrayList<>(Collections.singletonList(start));
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            if (reachable.add(name)) {
+                collectReferences(rules.get(name).getExpression(), pending);
+            }
+        }
+        rules.keySet().retainAll(reachable);
+        return new Grammar(rules.values());
+    }
+
+    // Splices nested alternations and concatenations into their parents and merges adjacent single-character
+    // alternatives into character classes. Only adjacent alternatives are merged, so ordered choice is preserved.
+    static Expression simplify(Expression expression, ExpressionFactory factory) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitConcatenation(ConcatenationExpression expression) {
+                List<Expression> expressions = new ArrayList<>();
+                for (int i = 0; i < childCount(); i++) {
+                    Expression e = child(i);
+                    if (e instanceof ConcatenationExpression) {
+                        expressions.addAll(((ConcatenationExpression) e).getExpressions());
+                    } else if (!(e instanceof TerminalExpression) ||
+                            !((TerminalExpression) e).getTerminal().isEmpty()) {
+                        expressions.add(e);
+                    }
+                }
+                if (expressions.isEmpty()) {
+                    return factory.terminal("");
+                }
+                return expressions.size() == 1 ? expressions.get(0) : factory.concatenation(expressions);
+            }
+
+            @Override
+            public Expression visitAlternation(AlternationExpression expression) {
+                List<Expression> expressions = new ArrayList<>();
+                for (int i = 0; i < childCount(); i++) {
+                    Expression e = child(i);
+                    if (e instanceof AlternationExpression) {
+                        for (Expression alternative : ((AlternationExpression) e).getExpressions()) {
+                            addAlternative(expressions, alternative, factory);
+                        }
+                    } else {
+                        addAlternative(expressions, e, factory);
+                    }
+                }
+                return expressions.size() == 1 ? expressions.get(0) : factory.alternation(expressions);
+            }
+        }.fold(expression);
+    }
+
+    private static void addAlternative(List<Expression> expressions, Expression expression,
+                                       ExpressionFactory factory) {
+        BitSet characters = characters(expression);
+        if (characters != null && !expressions.isEmpty()) {
+            BitSet previous = characters(expressions.get(expressions.size() - 1));
+            if (previous != null) {
+                previous.or(characters);
+                expressions.set(expressions.size() - 1, factory.characterClass(previous));
+                return;
+            }
+        }
+        expressions.add(expression);
+    }
+
+    private static BitSet characters(Expression expression) {
+        if (expression instanceof CharacterClassExpression) {
+            return ((CharacterClassExpression) expression).getCharacters();
+        } else if (expression instanceof TerminalExpression && ((TerminalExpression) expression).getTerminal()
+                .length() == 1) {
+            BitSet characters = new BitSet();
+            characters.set(((TerminalExpression) expression).getTerminal().charAt(0));
+            return characters;
+        }
+        return null;
+    }
+
+    // Rewrites a : a x | a y | b | c into a : (b | c) (x | y)*, which is what growing a memoized seed computes.
+    // Alternatives that reach the rule indirectly, or tails that could match nothing, keep the memoized form.
+    static Expression removeLeftRecursion(String name, Expression expression, GrammarAnalysis analysis) {
+        ExpressionFactory factory = analysis.getExpressionFactory();
+        List<Expression> alternatives = expression instanceof AlternationExpression ?
+                ((AlternationExpression) expression).getExpressions() : Collections.singletonList(expression);
+        List<Expression> bases = new ArrayList<>();
+        List<Expression> tails = new ArrayList<>();
+        for (Expression alternative : alternatives) {
+            if (alternative instanceof ConcatenationExpression) {
+                List<Expression> expressions = ((ConcatenationExpression) alternative).getExpressions();
+                Expression first = expressions.get(0);
+                if (first instanceof IdentifierExpression && ((IdentifierExpression) first).getIdentifier().getName()
+                        .equals(name)) {
+                    List<Expression> rest = expressions.subList(1, expressions.size());
+                    Expression tail = rest.size() == 1 ? rest.get(0) : factory.concatenation(rest);
+                    if (analysis.isNullable(tail)) {
+                        return expression;
+                    }
+                    tails.add(tail);
+                    continue;
+                }
+            }
+            if (analysis.getLeftmostReferences(alternative).contains(name)) {
+                return expression;
+            }
+            bases.add(alternative);
+        }
+        if (tails.isEmpty() || bases.isEmpty()) {
+            return expression;
+        }
+        Expression base = bases.size() == 1 ? bases.get(0) : factory.alternation(bases);
+        Expression tail = tails.size() == 1 ? tails.get(0) : factory.alternation(tails);
+        Expression repetition = factory.repetition(tail);
+        return simplify(factory.concatenation(Arrays.asList(base, repetition)), factory);
+    }
+
+    private static void inline(Map<String, Rule> rules, ExpressionFactory factory) {
+        Map<String, List<String>> references = new HashMap<>();
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            List<String> names = new ArrayList<>();
+            collectReferences(entry.getValue().getExpression(), names);
+            references.put(entry.getKey(), names);
+        }
+        Map<String, Expression> inlined = new HashMap<>();
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            Expression expression = entry.getValue().getExpression();
+            if (GrammarAnalysis.size(expression, INLINE_LIMIT) <= INLINE_LIMIT &&
+                    !reaches(references, entry.getKey())) {
+                inlined.put(entry.getKey(), expression);
+            }
+        }
+        if (inlined.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            Rule rule = entry.getValue();
+            Expression expression = rule.getExpression();
+            Expression substituted;
+            while ((substituted = substitute(expression, inlined, factory)) != expression) {
+                expression = substituted;
+            }
+            entry.setValue(new Rule(rule.getIdentifier(), simplify(expression, factory)));
+        }
+    }
+
+    private static boolean reaches(Map<String, List<String>> references, String name) {
+        Set<String> visited = new HashSet<>();
+        List<String> pending = new ArrayList<>(references.get(name));
+        while (!pending.isEmpty()) {
+            String reference = pending.remove(pending.size() - 1);
+            if (reference.equals(name)) {
+                return true;
+            }
+            if (visited.add(reference)) {
+                pending.addAll(references.get(reference));
+            }
+        }
+        return false;
+    }
+
+    private static Expression substitute(Expression expression, final Map<String, Expression> inlined,
+                                         ExpressionFactory factory) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitIdentifier(IdentifierExpression expression) {
+                Expression body = inlined.get(expression.getIdentifier().getName());
+                return body != null ? body : expression;
+            }
+        }.fold(expression);
+    }
+
+    private static void collectReferences(Expression expression, final List<String> references) {
+        new ExpressionWalker() {
+            @Override
+            public Void visitIdentifier(IdentifierExpression expression) {
+                references.add(expression.getIdentifier().getName());
+                return null;
+            }
+        }.walk(expression);
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A binary encoding of a grammar: a header with the length and CRC32 of the source it was parsed from, a string
+// table, the distinct expression nodes with children before parents, the rules, and a CRC32 of everything before
+// it. Equal subtrees are written once and come back shared.
+public final class GrammarSnapshot {
+
+    private static final int MAGIC = 0x45424e46;
+    private static final int VERSION = 1;
+
+    private static final byte TERMINAL = 0;
+    private static final byte CHARACTER_CLASS = 1;
+    private static final byte IDENTIFIER = 2;
+    private static final byte CONCATENATION = 3;
+    private static final byte ALTERNATION = 4;
+    private static final byte OPTION = 5;
+    private static final byte REPETITION = 6;
+    private static final byte REPETITION1 = 7;
+
+    private GrammarSnapshot() {
+    }
+
+    // Returns the grammar in the snapshot next to source when it was taken from the current contents of source, and
+    // parses source and rewrites the snapshot otherwise. Failing to write the snapshot does not fail the load.
+    public static Grammar load(Path source) throws IOException {
+        return load(source, source.resolveSibling(source.getFileName() + ".snapshot"));
+    }
+
+    public static Grammar load(Path source, Path snapshot) throws IOException {
+        long sourceHash = sourceHash(source);
+        if (Files.isRegularFile(snapshot)) {
+            try {
+                ByteBuffer buffer = map(snapshot);
+                if (buffer.getLong(8) == sourceHash) {
+                    return read(buffer);
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // a corrupt or outdated snapshot is replaced below
+            }
+        }
+        Grammar grammar = Ebnf.parse(source);
+        try {
+            Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(),
+                    ".tmp");
+            try {
+                Files.write(temp, toByteArray(encode(grammar, sourceHash)));
+                Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the snapshot is only a cache, so a read-only directory still gets the parsed grammar
+        }
+        return grammar;
+    }
+
+    public static Grammar read(Path snapshot) throws IOException {
+        return read(map(snapshot));
+    }
+
+    public static void write(Grammar grammar, long sourceHash, Path snapshot) throws IOException {
+        Files.write(snapshot, toByteArray(encode(grammar, sourceHash)));
+    }
+
+    // The length of the file in the upper 32 bits and its CRC32 in the lower ones.
+    public static long sourceHash(Path source) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(map(source));
+        return Files.size(source) << 32 | crc.getValue();
+    }
+
+    public static ByteBuffer encode(Grammar grammar, long sourceHash) {
+        Encoder encoder = new Encoder();
+        List<int[]> rules = new ArrayList<>();
+        for (Rule rule : grammar.getRules()) {
+            rules.add(new int[]{encoder.string(rule.getIdentifier().getName()), encoder.node(rule.getExpression())});
+        }
+        int size = 16 + 4;
+        for (String s : encoder.strings) {
+            size += 4 + 2 * s.length();
+        }
+        size += 4 + encoder.nodes.size() + 4 + 8 * rules.size() + 4;
+        for (int[] node : encoder.nodes) {
+            size += 4 * (node.length - 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceHash);
+        buffer.putInt(encoder.strings.size());
+        for (String s : encoder.strings) {
+            buffer.putInt(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                buffer.putChar(s.charAt(i));
+            }
+        }
+        buffer.putInt(encoder.nodes.size());
+        for (int[] node : encoder.nodes) {
+            buffer.put((byte) node[0]);
+            for (int i = 1; i < node.length; i++) {
+                buffer.putInt(node[i]);
+            }
+        }
+        buffer.putInt(rules.size());
+        for (int[] rule : rules) {
+            buffer.putInt(rule[0]).putInt(rule[1]);
+        }
+        buffer.putInt(checksum(buffer, buffer.position()));
+        buffer.flip();
+        return buffer;
+    }
+
+    public static Grammar read(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        try {
+            int limit = in.limit();
+            if (limit < 20 || in.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("Not a grammar snapshot");
+            }
+            if (in.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported grammar snapshot version " + in.getInt(4));
+            }
+            if (in.getInt(limit - 4) != checksum(in, limit - 4)) {
+                throw new IllegalArgumentException("Grammar snapshot checksum mismatch");
+            }
+            in.position(16);
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                char[] chars = new char[in.getInt()];
+                in.asCharBuffer().get(chars);
+                in.position(in.position() + 2 * chars.length);
+                strings[i] = new String(chars);
+            }
+            Expression[] nodes = new Expression[in.getInt()];
+            ExpressionFactory factory = new ExpressionFactory();
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = readNode(in, strings, nodes, i, factory);
+            }
+            List<Rule> rules = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                Identifier identifier = factory.identifier(strings[in.getInt()]);
+                rules.add(new Rule(identifier, node(nodes, in.getInt(), nodes.length)));
+            }
+            if (in.position() != limit - 4) {
+                throw new IllegalArgumentException("Trailing data in grammar snapshot");
+            }
+            return new Grammar(rules);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Corrupt grammar snapshot", e);
+        }
+    }
+
+    private static Expression readNode(ByteBuffer in, String[] strings, Expression[] nodes, int index,
+                                       ExpressionFactory factory) {
+        byte kind = in.get();
+        switch (kind) {
+        case TERMINAL:
+            return factory.terminal(strings[in.getInt()]);
+        case CHARACTER_CLASS:
+            BitSet characters = new BitSet();
+            for (int ranges = in.getInt(); ranges > 0; ranges--) {
+                int from = in.getInt();
+                int to = in.getInt();
+                if (from < 0 || from > to || to > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("Corrupt grammar snapshot");
+                }
+                characters.set(from, to + 1);
+            }
+            return factory.characterClass(characters);
+        case IDENTIFIER:
+            return factory.identifierExpression(factory.identifier(strings[in.getInt()]));
+        case CONCATENATION:
+        case ALTERNATION:
+            Expression[] children = new Expression[in.getInt()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = node(nodes, in.getInt(), index);
+            }
+            return kind == CONCATENATION ? factory.concatenation(Arrays.asList(children)) :
+                    factory.alternation(Arrays.asList(children));
+        case OPTION:
+            return factory.option(node(nodes, in.getInt(), index));
+        case REPETITION:
+            return factory.repetition(node(nodes, in.getInt(), index));
+        case REPETITION1:
+            return factory.repetition1(node(nodes, in.getInt(), index));
+        default:
+            throw new IllegalArgumentException("Unknown grammar snapshot node kind " + kind);
+        }
+    }
+
+    // Children always precede their parents, which also rules out cycles.
+    private static Expression node(Expression[] nodes, int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IllegalArgumentException("Corrupt grammar snapshot");
+        }
+        return nodes[index];
+    }
+
+    private static int checksum(ByteBuffer buffer, int length) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(0).limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    // Numbers strings and distinct nodes in the order they are first needed; a node is encoded as its kind followed
+    // by its int operands.
+    private static final class Encoder extends ExpressionFolder<Integer> {
+
+        final List<String> strings = new ArrayList<>();
+        final List<int[]> nodes = new ArrayList<>();
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final Map<Expression, Integer> nodeIndexes = new HashMap<>();
+
+        int string(String s) {
+            Integer index = stringIndexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndexes.put(s, index);
+            }
+            return index;
+        }
+
+        int node(Expression expression) {
+            return fold(expression);
+        }
+
+        @Override
+        public Integer visitTerminal(TerminalExpression expression) {
+            return add(expression, new int[]{TERMINAL, string(expression.getTerminal())});
+        }
+
+        @Override
+        public Integer visitCharacterClass(CharacterClassExpression expression) {
+            BitSet characters = expression.getCharacters();
+            List<Integer> operands = new ArrayList<>();
+            for (int c = characters.nextSetBit(0); c >= 0; c = characters.nextSetBit(c + 1)) {
+                operands.add(c);
+                c = characters.nextClearBit(c) - 1;
+                operands.add(c);
+            }
+            int[] node = new int[operands.size() + 2];
+            node[0] = CHARACTER_CLASS;
+            node[1] = operands.size() / 2;
+            for (int i = 0; i < operands.size(); i++) {
+                node[i + 2] = operands.get(i);
+            }
+            return add(expression, node);
+        }
+
+        @Override
+        public Integer visitIdentifier(IdentifierExpression expression) {
+            return add(expression, new int[]{IDENTIFIER, string(expression.getIdentifier().getName())});
+        }
+
+        @Override
+        public Integer visitConcatenation(ConcatenationExpression expression) {
+            return add(expression, children(CONCATENATION));
+        }
+
+        @Override
+        public Integer visitAlternation(AlternationExpression expression) {
+            return add(expression, children(ALTERNATION));
+        }
+
+        @Override
+        public Integer visitOption(OptionExpression expression) {
+            return add(expression, new int[]{OPTION, child(0)});
+        }
+
+        @Override
+        public Integer visitRepetition(RepetitionExpression expression) {
+            return add(expression, new int[]{REPETITION, child(0)});
+        }
+
+        @Override
+        public Integer visitRepetition1(Repetition1Expression expression) {
+            return add(expression, new int[]{REPETITION1, child(0)});
+        }
+
+        private int[] children(byte kind) {
+            int[] node = new int[childCount() + 2];
+            node[0] = kind;
+            node[1] = childCount();
+            for (int i = 0; i < childCount(); i++) {
+                node[i + 2] = child(i);
+            }
+            return node;
+        }
+
+        // Children are folded before their parent, so a new node is numbered after all of its children.
+        private int add(Expression expression, int[] node) {
+            Integer index = nodeIndexes.get(expression);
+            if (index == null) {
+                index = nodes.size();
+                nodes.add(node);
+                nodeIndexes.put(expression, index);
+            }
+            return index;
+        }
+    }
+}
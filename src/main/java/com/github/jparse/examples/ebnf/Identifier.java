@@ -38,6 +38,16 @@ public final class Identifier {
         return name;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof Identifier && ((Identifier) obj).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
     @Override
     public String toString() {
         return name;
@@ -27,17 +27,41 @@ package com.github.jparse.examples.ebnf;
 public final class IdentifierExpression extends Expression {
 
     private final Identifier identifier;
+    private final int ruleId;
 
     public IdentifierExpression(Identifier identifier) {
+        this(identifier, -1);
+    }
+
+    IdentifierExpression(Identifier identifier, int ruleId) {
+        super((3 * 31 + identifier.hashCode()) * 31 + ruleId);
         this.identifier = identifier;
+        this.ruleId = ruleId;
     }
 
     public Identifier getIdentifier() {
         return identifier;
     }
 
+    // The id of the referenced rule in the SymbolTable that resolved this expression, or -1.
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitIdentifier(this);
+    }
+
     @Override
-    public String toString() {
-        return identifier.toString();
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof IdentifierExpression) || obj.hashCode() != hashCode()) {
+            return false;
+        }
+        IdentifierExpression other = (IdentifierExpression) obj;
+        return other.ruleId == ruleId && other.identifier.equals(identifier);
     }
 }
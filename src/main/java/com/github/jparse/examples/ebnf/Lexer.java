@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.examples.text.MappedCharSequence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits grammar text into tokens in one pass, dropping whitespace and comments, so the parser never rescans them.
+// Tokens are produced either for the whole input or one ';'-terminated rule at a time.
+final class Lexer {
+
+    private final CharSequence input;
+    private final int end;
+    private int pos;
+
+    // A mapped file is read up to its end without asking for its length, which would index all of it up front.
+    Lexer(CharSequence input) {
+        this(input, 0, input instanceof MappedCharSequence ? -1 : input.length());
+    }
+
+    Lexer(CharSequence input, int start, int end) {
+        this.input = input;
+        this.end = end;
+        pos = start;
+    }
+
+    static TokenSequence tokenize(CharSequence input) {
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = new ArrayList<>();
+        while (lexer.next(tokens)) {
+        }
+        return new TokenSequence(tokens.toArray(new Token[tokens.size()]));
+    }
+
+    TokenSequence nextRule() {
+        List<Token> tokens = new ArrayList<>();
+        while (next(tokens)) {
+            if (tokens.get(tokens.size() - 1).getKind() == Token.Kind.SEMICOLON) {
+                break;
+            }
+        }
+        return tokens.isEmpty() ? null : new TokenSequence(tokens.toArray(new Token[tokens.size()]));
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    // Returns the offsets just past the ';' of a rule that split the input into chunks of roughly chunkSize chars,
+    // starting with 0 and ending with the input length. Only comments and quotes are tracked, which is enough to
+    // tell a terminating ';' from one inside a terminal or comment.
+    static int[] ruleBoundaries(CharSequence input, int chunkSize) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        int length = input.length();
+        int last = 0;
+        int pos = 0;
+        while (pos < length) {
+            char c = input.charAt(pos);
+            if (c == '/' && pos + 1 < length && input.charAt(pos + 1) == '*') {
+                pos += 2;
+                while (pos + 1 < length && (input.charAt(pos) != '*' || input.charAt(pos + 1) != '/')) {
+                    pos++;
+                }
+                pos += 2;
+            } else if (c == '\'' || c == '"') {
+                pos++;
+                while (pos < length && input.charAt(pos) != c) {
+                    pos++;
+                }
+                pos++;
+            } else {
+                pos++;
+                if (c == ';' && pos - last >= chunkSize && pos < length) {
+                    boundaries.add(pos);
+                    last = pos;
+                }
+            }
+        }
+        boundaries.add(length);
+        int[] result = new int[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    private boolean next(List<Token> tokens) {
+        pos = skip(pos);
+        if (!inBounds(pos)) {
+            return false;
+        }
+        char c = input.charAt(pos);
+        Token.Kind kind = punctuation(c);
+        if (kind != null) {
+            tokens.add(new Token(kind, null, pos));
+            pos++;
+        } else if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z') {
+            int end = pos + 1;
+            while (inBounds(end) && isIdentifierPart(input.charAt(end))) {
+                end++;
+            }
+            tokens.add(new Token(Token.Kind.IDENTIFIER, input.subSequence(pos, end).toString(), pos));
+            pos = end;
+        } else if (c == '\'' || c == '"') {
+            int end = pos + 1;
+            while (inBounds(end) && input.charAt(end) != c) {
+                end++;
+            }
+            if (!inBounds(end)) {
+                throw new IllegalArgumentException("Unterminated terminal at " + pos);
+            }
+            tokens.add(new Token(Token.Kind.TERMINAL, input.subSequence(pos + 1, end).toString(), pos));
+            pos = end + 1;
+        } else {
+            throw new IllegalArgumentException("Unexpected character '" + c + "' at " + pos);
+        }
+        return true;
+    }
+
+    private int skip(int pos) {
+        while (inBounds(pos)) {
+            char c = input.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && inBounds(pos + 1) && input.charAt(pos + 1) == '*') {
+                int end = pos + 2;
+                while (inBounds(end + 1) && (input.charAt(end) != '*' || input.charAt(end + 1) != '/')) {
+                    end++;
+                }
+                if (!inBounds(end + 1)) {
+                    throw new IllegalArgumentException("Unterminated comment at " + pos);
+                }
+                pos = end + 2;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private boolean inBounds(int pos) {
+        return end >= 0 ? pos < end : ((MappedCharSequence) input).hasCharAt(pos);
+    }
+
+    private static Token.Kind punctuation(char c) {
+        switch (c) {
+        case ':':
+            return Token.Kind.COLON;
+        case ';':
+            return Token.Kind.SEMICOLON;
+        case '|':
+            return Token.Kind.BAR;
+        case '(':
+            return Token.Kind.LEFT_PAREN;
+        case ')':
+            return Token.Kind.RIGHT_PAREN;
+        case '?':
+            return Token.Kind.QUESTION;
+        case '*':
+            return Token.Kind.STAR;
+        case '+':
+            return Token.Kind.PLUS;
+        default:
+            return null;
+        }
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c == '_';
+    }
+}
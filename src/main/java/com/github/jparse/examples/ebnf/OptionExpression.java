@@ -29,6 +29,7 @@ public final class OptionExpression extends Expression {
     private final Expression expression;
 
     public OptionExpression(Expression expression) {
+        super(6 * 31 + expression.hashCode());
         this.expression = expression;
     }
 
@@ -37,7 +38,26 @@ public final class OptionExpression extends Expression {
     }
 
     @Override
-    public String toString() {
-        return '(' + expression.toString() + ')' + '?';
+    int getChildCount() {
+        return 1;
+    }
+
+    @Override
+    Expression getChild(int index) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException("No child " + index + " in " + this);
+        }
+        return expression;
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitOption(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof OptionExpression && obj.hashCode() == hashCode() &&
+                ((OptionExpression) obj).expression.equals(expression);
     }
 }
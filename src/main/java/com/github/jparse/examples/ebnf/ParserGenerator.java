@@ -0,0 +1,515 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+public final class ParserGenerator {
+
+    private static final int MAX_DISPATCH_CHARS = 256;
+
+    private final GrammarAnalysis analysis;
+    private final String packageName;
+    private final String className;
+    private final String start;
+    private final Map<String, Integer> memoIndexes = new HashMap<>();
+    private final StringBuilder methods = new StringBuilder();
+    private final Map<String, Integer> helperCounts = new HashMap<>();
+    private final Queue<PendingMethod> pendingMethods = new ArrayDeque<>();
+
+    public ParserGenerator(Grammar grammar, String qualifiedClassName, String start) {
+        analysis = new GrammarAnalysis(GrammarOptimizer.optimize(grammar, start));
+        int index = qualifiedClassName.lastIndexOf('.');
+        packageName = index < 0 ? null : qualifiedClassName.substring(0, index);
+        className = qualifiedClassName.substring(index + 1);
+        this.start = analysis.getRule(start).getIdentifier().getName();
+    }
+
+    public ParserGenerator(Grammar grammar, String qualifiedClassName) {
+        this(grammar, qualifiedClassName, grammar.getRules().iterator().next().getIdentifier().getName());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ParserGenerator <grammar> <output directory> <class name> [<start rule>]");
+            System.exit(1);
+        }
+        Grammar grammar = Ebnf.parse(Paths.get(args[0]));
+        ParserGenerator generator = args.length > 3 ? new ParserGenerator(grammar, args[2], args[3]) :
+                new ParserGenerator(grammar, args[2]);
+        Path path = Paths.get(args[1], args[2].replace('.', '/') + ".java");
+        Files.createDirectories(path.getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            generator.generate(writer);
+        }
+    }
+
+    public void generate(Appendable out) throws IOException {
+        memoIndexes.clear();
+        methods.setLength(0);
+        helperCounts.clear();
+        for (Rule rule : analysis.getRules()) {
+            String name = rule.getIdentifier().getName();
+            if (analysis.isMemoized(name)) {
+                memoIndexes.put(name, memoIndexes.size());
+            }
+        }
+        for (Rule rule : analysis.getRules()) {
+            generateRule(rule);
+        }
+        out.append("// Generated by ").append(ParserGenerator.class.getSimpleName()).append(", do not edit.\n\n");
+        if (packageName != null) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("public final class ").append(className).append(" {\n\n");
+        out.append("    private final CharSequence input;\n");
+        out.append("    private final int length;\n");
+        out.append("    private final int[][] memos = new int[").append(String.valueOf(memoIndexes.size()))
+                .append("][];\n\n");
+        out.append("    private ").append(className).append("(CharSequence input) {\n");
+        out.append("        this.input = input;\n");
+        out.append("        length = input.length();\n");
+        out.append("    }\n\n");
+        out.append("    public static int parse(CharSequence input) {\n");
+        out.append("        return new ").append(className).append("(input).").append(methodName(start))
+                .append("(0);\n");
+        out.append("    }\n\n");
+        out.append("    public static boolean matches(CharSequence input) {\n");
+        out.append("        return parse(input) == input.length();\n");
+        out.append("    }\n");
+        out.append(methods);
+        out.append('\n');
+        out.append("    private int[] memo(int index) {\n");
+        out.append("        int[] memo = memos[index];\n");
+        out.append("        if (memo == null) {\n");
+        out.append("            memo = memos[index] = new int[length + 1];\n");
+        out.append("        }\n");
+        out.append("        return memo;\n");
+        out.append("    }\n\n");
+        out.append("    private int skip(int pos) {\n");
+        out.append("        while (pos < length && Character.isWhitespace(input.charAt(pos))) {\n");
+        out.append("            pos++;\n");
+        out.append("        }\n");
+        out.append("        return pos;\n");
+        out.append("    }\n\n");
+        out.append("    private int ch(int pos, char c) {\n");
+        out.append("        pos = skip(pos);\n");
+        out.append("        return pos < length && input.charAt(pos) == c ? pos + 1 : -1;\n");
+        out.append("    }\n\n");
+        out.append("    private int term(int pos, String terminal) {\n");
+        out.append("        pos = skip(pos);\n");
+        out.append("        int end = pos + terminal.length();\n");
+        out.append("        if (end > length) {\n");
+        out.append("            return -1;\n");
+        out.append("        }\n");
+        out.append("        for (int i = 0; i < terminal.length(); i++) {\n");
+        out.append("            if (input.charAt(pos + i) != terminal.charAt(i)) {\n");
+        out.append("                return -1;\n");
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("        return end;\n");
+        out.append("    }\n");
+        out.append("}\n");
+    }
+
+    // Memo slots hold the end position plus two, so that zero means "not parsed yet" and one means failure.
+    private void generateRule(Rule rule) {
+        String name = rule.getIdentifier().getName();
+        String method = methodName(name);
+        Expression expression = rule.getExpression();
+        if (!memoIndexes.containsKey(name)) {
+            generateMethod(method, expression);
+            return;
+        }
+        String body = method + "Body";
+        generateMethod(body, expression);
+        int index = memoIndexes.get(name);
+        methods.append('\n');
+        methods.append("    private int ").append(method).append("(int pos) {\n");
+        methods.append("        int[] memo = memo(").append(index).append(");\n");
+        methods.append("        if (memo[pos] != 0) {\n");
+        methods.append("            return memo[pos] - 2;\n");
+        methods.append("        }\n");
+        if (analysis.isLeftRecursionHead(name)) {
+            methods.append("        memo[pos] = 1;\n");
+            methods.append("        int result = -1;\n");
+            methods.append("        while (true) {\n");
+            methods.append("            int end = ").append(body).append("(pos);\n");
+            methods.append("            if (end <= result) {\n");
+            methods.append("                return result;\n");
+            methods.append("            }\n");
+            methods.append("            result = end;\n");
+            methods.append("            memo[pos] = result + 2;\n");
+            methods.append("        }\n");
+        } else {
+            methods.append("        int result = ").append(body).append("(pos);\n");
+            methods.append("        memo[pos] = result + 2;\n");
+            methods.append("        return result;\n");
+        }
+        methods.append("    }\n");
+    }
+
+    // Generates method and the helpers it calls from a queue rather than by recursion, so the nesting depth of an
+    // expression does not reach the call stack.
+    private void generateMethod(String method, Expression expression) {
+        pendingMethods.add(new PendingMethod(method, expression));
+        PendingMethod next;
+        while ((next = pendingMethods.poll()) != null) {
+            methods.append('\n');
+            methods.append("    private int ").append(next.method).append("(int pos) {\n");
+            next.expression.accept(new MethodGenerator(next.method, methods));
+            methods.append("    }\n");
+        }
+    }
+
+    // Alternatives are grouped by the characters that can start them, and each group becomes one case of a switch
+    // on the next character, so ordered choice only runs where FIRST sets overlap.
+    private boolean appendDispatch(StringBuilder sb, String method, List<Expression> expressions,
+                                   List<BitSet> firstSets) {
+        BitSet union = new BitSet();
+        for (BitSet first : firstSets) {
+            union.or(first);
+        }
+        if (union.cardinality() > MAX_DISPATCH_CHARS) {
+            return false;
+        }
+        Map<List<Integer>, BitSet> groups = new LinkedHashMap<>();
+        for (int c = union.nextSetBit(0); c >= 0; c = union.nextSetBit(c + 1)) {
+            List<Integer> candidates = new ArrayList<>();
+            for (int i = 0; i < firstSets.size(); i++) {
+                if (firstSets.get(i).get(c)) {
+                    candidates.add(i);
+                }
+            }
+            BitSet chars = groups.get(candidates);
+            if (chars == null) {
+                chars = new BitSet();
+                groups.put(candidates, chars);
+            }
+            chars.set(c);
+        }
+        sb.append("        int start = skip(pos);\n");
+        sb.append("        if (start >= length) {\n");
+        sb.append("            return -1;\n");
+        sb.append("        }\n");
+        sb.append("        int end;\n");
+        sb.append("        switch (input.charAt(start)) {\n");
+        for (Map.Entry<List<Integer>, BitSet> entry : groups.entrySet()) {
+            BitSet chars = entry.getValue();
+            for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+                sb.append("        case ").append(charLiteral((char) c)).append(":\n");
+            }
+            List<Integer> candidates = entry.getKey();
+            boolean complete = false;
+            for (int i = 0; i < candidates.size() && !complete; i++) {
+                Expression e = expressions.get(candidates.get(i));
+                if (isCharTerminal(e) || e instanceof CharacterClassExpression) {
+                    sb.append("            return start + 1;\n");
+                    complete = true;
+                } else if (i == candidates.size() - 1) {
+                    sb.append("            return ").append(call(method, e, "start")).append(";\n");
+                    complete = true;
+                } else {
+                    sb.append("            if ((end = ").append(call(method, e, "start")).append(") >= 0) {\n");
+                    sb.append("                return end;\n");
+                    sb.append("            }\n");
+                }
+            }
+            if (!complete) {
+                sb.append("            return -1;\n");
+            }
+        }
+        sb.append("        default:\n");
+        sb.append("            return -1;\n");
+        sb.append("        }\n");
+        return true;
+    }
+
+    private void appendLoop(StringBuilder sb, String method, Expression expression) {
+        String call = call(method, expression, "pos");
+        sb.append("        int end;\n");
+        sb.append("        while ((end = ").append(call).append(") > pos) {\n");
+        sb.append("            pos = end;\n");
+        sb.append("        }\n");
+        sb.append("        return pos;\n");
+    }
+
+    private String call(String method, Expression expression, String pos) {
+        if (expression instanceof TerminalExpression) {
+            if (isCharTerminal(expression)) {
+                return "ch(" + pos + ", " + charLiteral(expression) + ')';
+            }
+            return "term(" + pos + ", " + stringLiteral(((TerminalExpression) expression).getTerminal()) + ')';
+        } else if (expression instanceof IdentifierExpression) {
+            return methodName(((IdentifierExpression) expression).getIdentifier().getName()) + '(' + pos + ')';
+        }
+        String helper = helperName(method);
+        pendingMethods.add(new PendingMethod(helper, expression));
+        return helper + '(' + pos + ')';
+    }
+
+    private String helperName(String method) {
+        String base = method.endsWith("Body") ? method.substring(0, method.length() - 4) : method;
+        int index = base.indexOf('$');
+        if (index >= 0) {
+            base = base.substring(0, index);
+        }
+        Integer count = helperCounts.get(base);
+        count = count == null ? 1 : count + 1;
+        helperCounts.put(base, count);
+        return base + '$' + count;
+    }
+
+    private static String methodName(String ruleName) {
+        return ruleName + "Rule";
+    }
+
+    private static void flattenConcatenation(Expression expression, List<Expression> expressions) {
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expression e = pending.pop();
+            if (e instanceof ConcatenationExpression) {
+                for (int i = e.getChildCount() - 1; i >= 0; i--) {
+                    pending.push(e.getChild(i));
+                }
+            } else {
+                expressions.add(e);
+            }
+        }
+    }
+
+    private static void flattenAlternation(Expression expression, List<Expression> expressions) {
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expression e = pending.pop();
+            if (e instanceof AlternationExpression) {
+                for (int i = e.getChildCount() - 1; i >= 0; i--) {
+                    pending.push(e.getChild(i));
+                }
+            } else {
+                expressions.add(e);
+            }
+        }
+    }
+
+    private static String classCondition(CharacterClassExpression expression) {
+        BitSet characters = expression.getCharacters();
+        StringBuilder sb = new StringBuilder();
+        for (int c = characters.nextSetBit(0); c >= 0; c = characters.nextSetBit(c + 1)) {
+            int last = characters.nextClearBit(c) - 1;
+            if (sb.length() > 0) {
+                sb.append(" || ");
+            }
+            if (last == c) {
+                sb.append("c == ").append(charLiteral((char) c));
+            } else {
+                sb.append("c >= ").append(charLiteral((char) c)).append(" && c <= ")
+                        .append(charLiteral((char) last));
+            }
+            c = last;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isCharTerminal(Expression expression) {
+        return expression instanceof TerminalExpression &&
+                ((TerminalExpression) expression).getTerminal().length() == 1;
+    }
+
+    private static String charLiteral(Expression expression) {
+        return charLiteral(((TerminalExpression) expression).getTerminal().charAt(0));
+    }
+
+    private static String charLiteral(char c) {
+        return '\'' + escape(String.valueOf(c), '\'') + '\'';
+    }
+
+    private static String stringLiteral(String s) {
+        return '"' + escape(s, '"') + '"';
+    }
+
+    private static String escape(String s, char quote) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == quote || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < ' ' || c == 0x7f) {
+                sb.append(String.format("\\%03o", (int) c));
+            } else if (c > '~') {
+                // Unicode escapes are translated before lexing, so they are only used once line terminators, quotes
+                // and backslashes are out of the way
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class PendingMethod {
+
+        final String method;
+        final Expression expression;
+
+        PendingMethod(String method, Expression expression) {
+            this.method = method;
+            this.expression = expression;
+        }
+    }
+
+    // Writes the body of method for the expression it visits. Like the interpreter's TextParsers, every terminal
+    // and character class skips leading whitespace, and a missed option consumes it as the empty literal would.
+    private final class MethodGenerator implements ExpressionVisitor<Void> {
+
+        private final String method;
+        private final StringBuilder sb;
+
+        MethodGenerator(String method, StringBuilder sb) {
+            this.method = method;
+            this.sb = sb;
+        }
+
+        @Override
+        public Void visitTerminal(TerminalExpression expression) {
+            sb.append("        return ").append(call(method, expression, "pos")).append(";\n");
+            return null;
+        }
+
+        @Override
+        public Void visitCharacterClass(CharacterClassExpression expression) {
+            sb.append("        pos = skip(pos);\n");
+            sb.append("        if (pos < length) {\n");
+            sb.append("            char c = input.charAt(pos);\n");
+            sb.append("            if (").append(classCondition(expression)).append(") {\n");
+            sb.append("                return pos + 1;\n");
+            sb.append("            }\n");
+            sb.append("        }\n");
+            sb.append("        return -1;\n");
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierExpression expression) {
+            sb.append("        return ").append(call(method, expression, "pos")).append(";\n");
+            return null;
+        }
+
+        @Override
+        public Void visitConcatenation(ConcatenationExpression expression) {
+            List<Expression> expressions = new ArrayList<>();
+            flattenConcatenation(expression, expressions);
+            for (Expression e : expressions) {
+                if (isCharTerminal(e)) {
+                    sb.append("        pos = skip(pos);\n");
+                    sb.append("        if (pos >= length || input.charAt(pos) != ").append(charLiteral(e))
+                            .append(") {\n");
+                    sb.append("            return -1;\n");
+                    sb.append("        }\n");
+                    sb.append("        pos++;\n");
+                } else {
+                    sb.append("        pos = ").append(call(method, e, "pos")).append(";\n");
+                    sb.append("        if (pos < 0) {\n");
+                    sb.append("            return -1;\n");
+                    sb.append("        }\n");
+                }
+            }
+            sb.append("        return pos;\n");
+            return null;
+        }
+
+        @Override
+        public Void visitAlternation(AlternationExpression expression) {
+            List<Expression> expressions = new ArrayList<>();
+            flattenAlternation(expression, expressions);
+            List<BitSet> firstSets = analysis.getDispatchSets(expressions);
+            if (firstSets != null && appendDispatch(sb, method, expressions, firstSets)) {
+                return null;
+            }
+            sb.append("        int start = skip(pos);\n");
+            sb.append("        int end;\n");
+            for (Expression e : expressions) {
+                if (isCharTerminal(e)) {
+                    sb.append("        if (start < length && input.charAt(start) == ").append(charLiteral(e))
+                            .append(") {\n");
+                    sb.append("            return start + 1;\n");
+                    sb.append("        }\n");
+                } else {
+                    sb.append("        if ((end = ").append(call(method, e, "pos")).append(") >= 0) {\n");
+                    sb.append("            return end;\n");
+                    sb.append("        }\n");
+                }
+            }
+            sb.append("        return -1;\n");
+            return null;
+        }
+
+        @Override
+        public Void visitOption(OptionExpression expression) {
+            sb.append("        int end = ").append(call(method, expression.getExpression(), "pos")).append(";\n");
+            sb.append("        return end >= 0 ? end : skip(pos);\n");
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition(RepetitionExpression expression) {
+            appendLoop(sb, method, expression.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition1(Repetition1Expression expression) {
+            Expression e = expression.getExpression();
+            sb.append("        pos = ").append(call(method, e, "pos")).append(";\n");
+            sb.append("        if (pos < 0) {\n");
+            sb.append("            return -1;\n");
+            sb.append("        }\n");
+            appendLoop(sb, method, e);
+            return null;
+        }
+    }
+}
@@ -29,6 +29,7 @@ public final class Repetition1Expression extends Expression {
     private final Expression expression;
 
     public Repetition1Expression(Expression expression) {
+        super(8 * 31 + expression.hashCode());
         this.expression = expression;
     }
 
@@ -37,7 +38,26 @@ public final class Repetition1Expression extends Expression {
     }
 
     @Override
-    public String toString() {
-        return '(' + expression.toString() + ')' + '+';
+    int getChildCount() {
+        return 1;
+    }
+
+    @Override
+    Expression getChild(int index) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException("No child " + index + " in " + this);
+        }
+        return expression;
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitRepetition1(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof Repetition1Expression && obj.hashCode() == hashCode() &&
+                ((Repetition1Expression) obj).expression.equals(expression);
     }
 }
@@ -29,6 +29,7 @@ public final class RepetitionExpression extends Expression {
     private final Expression expression;
 
     public RepetitionExpression(Expression expression) {
+        super(7 * 31 + expression.hashCode());
         this.expression = expression;
     }
 
@@ -37,7 +38,26 @@ public final class RepetitionExpression extends Expression {
     }
 
     @Override
-    public String toString() {
-        return '(' + expression.toString() + ')' + '*';
+    int getChildCount() {
+        return 1;
+    }
+
+    @Override
+    Expression getChild(int index) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException("No child " + index + " in " + this);
+        }
+        return expression;
+    }
+
+    @Override
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitRepetition(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof RepetitionExpression && obj.hashCode() == hashCode() &&
+                ((RepetitionExpression) obj).expression.equals(expression);
     }
 }
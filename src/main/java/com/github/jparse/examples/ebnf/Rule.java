@@ -42,8 +42,16 @@ public final class Rule {
         return expression;
     }
 
+    void appendTo(StringBuilder sb) {
+        sb.append(identifier.getName()).append(':');
+        ExpressionPrinter.print(expression, sb);
+        sb.append(';');
+    }
+
     @Override
     public String toString() {
-        return identifier.toString() + ':' + expression + ';';
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Interns the rule names of a grammar and numbers the rules densely in declaration order. The resolved rules are
+// copies whose identifier expressions carry the id of their target and share one Identifier per symbol, so whoever
+// holds the table can index arrays by rule id instead of looking names up at every reference.
+public final class SymbolTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Identifier[] identifiers;
+    private final Rule[] rules;
+    private final Grammar grammar;
+
+    public SymbolTable(Grammar grammar) {
+        this(grammar, new ExpressionFactory());
+    }
+
+    SymbolTable(Grammar grammar, ExpressionFactory factory) {
+        Collection<Rule> declared = grammar.getRules();
+        identifiers = new Identifier[declared.size()];
+        for (Rule rule : declared) {
+            String name = rule.getIdentifier().getName();
+            if (ids.put(name, ids.size()) != null) {
+                throw new IllegalArgumentException("Duplicate rule " + name);
+            }
+            identifiers[ids.size() - 1] = factory.identifier(name);
+        }
+        rules = new Rule[identifiers.length];
+        int id = 0;
+        for (Rule rule : declared) {
+            rules[id] = new Rule(identifiers[id], resolve(rule.getExpression(), factory));
+            id++;
+        }
+        this.grammar = new Grammar(Arrays.asList(rules));
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Undefined rule " + name);
+        }
+        return id;
+    }
+
+    // Uses the id an expression carries when it was resolved by this table and looks the name up otherwise.
+    public int getId(IdentifierExpression expression) {
+        int id = expression.getRuleId();
+        if (id >= 0 && id < identifiers.length && identifiers[id] == expression.getIdentifier()) {
+            return id;
+        }
+        return getId(expression.getIdentifier().getName());
+    }
+
+    public boolean contains(String name) {
+        return ids.containsKey(name);
+    }
+
+    public String getName(int id) {
+        return identifiers[id].getName();
+    }
+
+    public Identifier getIdentifier(int id) {
+        return identifiers[id];
+    }
+
+    public Rule getRule(int id) {
+        return rules[id];
+    }
+
+    public List<Rule> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    private Expression resolve(Expression expression, ExpressionFactory factory) {
+        return new ExpressionRewriter(factory) {
+            @Override
+            public Expression visitIdentifier(IdentifierExpression expression) {
+                int id = getId(expression.getIdentifier().getName());
+                return factory.identifierExpression(identifiers[id], id);
+            }
+        }.fold(expression);
+    }
+}
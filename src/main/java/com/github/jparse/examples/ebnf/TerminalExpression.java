@@ -24,14 +24,13 @@
 
 package com.github.jparse.examples.ebnf;
 
-import static java.util.Objects.requireNonNull;
-
 public final class TerminalExpression extends Expression {
 
     private final String terminal;
 
     public TerminalExpression(String terminal) {
-        this.terminal = requireNonNull(terminal);
+        super(31 + terminal.hashCode());
+        this.terminal = terminal;
     }
 
     public String getTerminal() {
@@ -39,7 +38,13 @@ public final class TerminalExpression extends Expression {
     }
 
     @Override
-    public String toString() {
-        return terminal.contains("\"") ? '\'' + terminal + '\'' : '"' + terminal + '"';
+    public <R> R accept(ExpressionVisitor<R> visitor) {
+        return visitor.visitTerminal(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof TerminalExpression && obj.hashCode() == hashCode() &&
+                ((TerminalExpression) obj).terminal.equals(terminal);
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+final class Token {
+
+    private final Kind kind;
+    private final String text;
+    private final int offset;
+
+    Token(Kind kind, String text, int offset) {
+        this.kind = kind;
+        this.text = text;
+        this.offset = offset;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.IDENTIFIER || kind == Kind.TERMINAL ? kind.getDescription() + ' ' + text :
+                kind.getDescription();
+    }
+
+    enum Kind {
+
+        IDENTIFIER("identifier"),
+        TERMINAL("terminal"),
+        COLON("':'"),
+        SEMICOLON("';'"),
+        BAR("'|'"),
+        LEFT_PAREN("'('"),
+        RIGHT_PAREN("')'"),
+        QUESTION("'?'"),
+        STAR("'*'"),
+        PLUS("'+'");
+
+        private final String description;
+
+        Kind(String description) {
+            this.description = description;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+}
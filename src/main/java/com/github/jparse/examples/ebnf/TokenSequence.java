@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.Sequence;
+
+final class TokenSequence implements Sequence<Token> {
+
+    private final Token[] tokens;
+    private final int start;
+    private final int end;
+
+    TokenSequence(Token[] tokens) {
+        this(tokens, 0, tokens.length);
+    }
+
+    private TokenSequence(Token[] tokens, int start, int end) {
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public Token at(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return tokens[start + index];
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public TokenSequence subSequence(int start) {
+        return subSequence(start, end - this.start);
+    }
+
+    @Override
+    public TokenSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > this.end - this.start) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        return new TokenSequence(tokens, this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                sb.append(' ');
+            }
+            sb.append(tokens[i]);
+        }
+        return sb.toString();
+    }
+}
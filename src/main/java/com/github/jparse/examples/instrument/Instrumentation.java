@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.instrument;
+
+import com.github.jparse.FluentParser;
+import com.github.jparse.Sequence;
+import com.github.jparse.examples.text.CharInput;
+import com.github.jparse.examples.text.ParseContext;
+
+import java.util.List;
+
+import static com.github.jparse.Sequences.fromCharSequence;
+import static com.github.jparse.StatefulParsers.log;
+import static com.github.jparse.StatefulSequences.stateful;
+import static com.github.jparse.examples.text.TextParsers.memo;
+
+public abstract class Instrumentation {
+
+    public static final Instrumentation NONE = new Instrumentation() {
+        @Override
+        public <T, U> FluentParser<T, U> rule(FluentParser<T, U> parser, String name) {
+            return parser.named(name);
+        }
+    };
+    public static final Instrumentation TRACE = new Instrumentation() {
+        @Override
+        public <T, U> FluentParser<T, U> rule(FluentParser<T, U> parser, String name) {
+            return log(parser.named(name));
+        }
+
+        @Override
+        public Sequence<Character> input(CharSequence sequence) {
+            return stateful(fromCharSequence(sequence));
+        }
+
+        @Override
+        public Sequence<Character> input(CharSequence sequence, ParseContext context) {
+            return input(sequence);
+        }
+    };
+
+    public abstract <T, U> FluentParser<T, U> rule(FluentParser<T, U> parser, String name);
+
+    public <T, U> FluentParser<T, U> memoRule(FluentParser<T, U> parser, String name) {
+        return rule(memo(parser), name);
+    }
+
+    // The ordered choice between the alternatives of the named rule. Ordered choice is associative, so the
+    // alternatives are split into a balanced tree of orelse, and a parse nests only logarithmically deep in them.
+    public <T, U> FluentParser<T, U> choice(List<FluentParser<T, U>> alternatives, String name) {
+        return choice(alternatives, 0, alternatives.size());
+    }
+
+    public Sequence<Character> input(CharSequence sequence) {
+        return new CharInput(sequence);
+    }
+
+    public Sequence<Character> input(CharSequence sequence, ParseContext context) {
+        return context.input(sequence);
+    }
+
+    private static <T, U> FluentParser<T, U> choice(List<FluentParser<T, U>> alternatives, int from, int to) {
+        if (to - from == 1) {
+            return alternatives.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        return choice(alternatives, from, middle).orelse(choice(alternatives, middle, to));
+    }
+}
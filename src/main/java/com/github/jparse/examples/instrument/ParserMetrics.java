@@ -0,0 +1,296 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.instrument;
+
+import com.github.jparse.FluentParser;
+import com.github.jparse.ParseResult;
+import com.github.jparse.Sequence;
+import com.github.jparse.examples.text.ParseContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.jparse.examples.text.TextParsers.memo;
+import static java.util.Objects.requireNonNull;
+
+public final class ParserMetrics extends Instrumentation {
+
+    private final Instrumentation delegate;
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<>();
+    private final ThreadLocal<Progress> progress = new ThreadLocal<Progress>() {
+        @Override
+        protected Progress initialValue() {
+            return new Progress();
+        }
+    };
+
+    public ParserMetrics() {
+        this(NONE);
+    }
+
+    public ParserMetrics(Instrumentation delegate) {
+        this.delegate = requireNonNull(delegate);
+    }
+
+    @Override
+    public <T, U> FluentParser<T, U> rule(FluentParser<T, U> parser, String name) {
+        return delegate.rule(new CountingParser<>(parser, counters(name), progress, false), name);
+    }
+
+    @Override
+    public <T, U> FluentParser<T, U> memoRule(FluentParser<T, U> parser, String name) {
+        Counters counters = counters(name);
+        FluentParser<T, U> memo = memo(new MemoBodyParser<>(parser, counters));
+        return delegate.rule(new CountingParser<>(memo, counters, progress, true), name);
+    }
+
+    @Override
+    public <T, U> FluentParser<T, U> choice(List<FluentParser<T, U>> alternatives, String name) {
+        return new ChoiceParser<>(new ArrayList<>(alternatives), counters(name), progress);
+    }
+
+    @Override
+    public Sequence<Character> input(CharSequence sequence) {
+        return delegate.input(sequence);
+    }
+
+    @Override
+    public Sequence<Character> input(CharSequence sequence, ParseContext context) {
+        return delegate.input(sequence, context);
+    }
+
+    public Map<String, RuleStats> snapshot() {
+        Map<String, RuleStats> snapshot = new TreeMap<>();
+        for (Counters c : counters.values()) {
+            snapshot.put(c.name, new RuleStats(c.name, c.invocations.sum(), c.successes.sum(), c.failures.sum(),
+                    c.memoHits.sum(), c.memoMisses.sum(), c.backtrackedLength.sum(), c.nanos.sum()));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    public void reset() {
+        for (Counters c : counters.values()) {
+            c.reset();
+        }
+    }
+
+    private Counters counters(String name) {
+        Counters c = counters.get(name);
+        if (c == null) {
+            Counters newCounters = new Counters(name);
+            c = counters.putIfAbsent(name, newCounters);
+            if (c == null) {
+                c = newCounters;
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (RuleStats stats : snapshot().values()) {
+            sb.append(stats).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static final class Counters {
+
+        final String name;
+        final LongAdder invocations = new LongAdder();
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder memoHits = new LongAdder();
+        final LongAdder memoMisses = new LongAdder();
+        final LongAdder backtrackedLength = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        // One flag per active memoized call on this thread, set when the memo table had to evaluate the body.
+        final ThreadLocal<MemoFrames> frames = new ThreadLocal<MemoFrames>() {
+            @Override
+            protected MemoFrames initialValue() {
+                return new MemoFrames();
+            }
+        };
+
+        Counters(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+            invocations.reset();
+            successes.reset();
+            failures.reset();
+            memoHits.reset();
+            memoMisses.reset();
+            backtrackedLength.reset();
+            nanos.reset();
+        }
+    }
+
+    private static final class MemoFrames {
+
+        boolean[] evaluated = new boolean[16];
+        int size;
+
+        void push() {
+            if (size == evaluated.length) {
+                boolean[] newEvaluated = new boolean[size * 2];
+                System.arraycopy(evaluated, 0, newEvaluated, 0, size);
+                evaluated = newEvaluated;
+            }
+            evaluated[size++] = false;
+        }
+
+        boolean pop() {
+            return evaluated[--size];
+        }
+
+        void markEvaluated() {
+            if (size > 0) {
+                evaluated[size - 1] = true;
+            }
+        }
+    }
+
+    private static final class CountingParser<T, U> extends FluentParser<T, U> {
+
+        private final FluentParser<T, U> parser;
+        private final Counters counters;
+        private final ThreadLocal<Progress> progress;
+        private final boolean memoized;
+
+        CountingParser(FluentParser<T, U> parser, Counters counters, ThreadLocal<Progress> progress,
+                       boolean memoized) {
+            this.parser = parser;
+            this.counters = counters;
+            this.progress = progress;
+            this.memoized = memoized;
+        }
+
+        @Override
+        public ParseResult<T, ? extends U> parse(Sequence<T> sequence) {
+            MemoFrames frames = memoized ? counters.frames.get() : null;
+            if (frames != null) {
+                frames.push();
+            }
+            long start = System.nanoTime();
+            ParseResult<T, ? extends U> result = null;
+            try {
+                result = parser.parse(sequence);
+                return result;
+            } finally {
+                counters.nanos.add(System.nanoTime() - start);
+                counters.invocations.increment();
+                if (result != null && result.isSuccess()) {
+                    counters.successes.increment();
+                    progress.get().reached(result.getRest().length());
+                } else {
+                    counters.failures.increment();
+                }
+                if (frames != null) {
+                    if (frames.pop()) {
+                        counters.memoMisses.increment();
+                    } else {
+                        counters.memoHits.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    // Tries the alternatives in order. When one fails, everything it matched before failing is discarded, so the
+    // furthest offset it reached, through its own failure or through any rule that succeeded inside it, is added
+    // to the backtracked length of the rule the choice belongs to. The last alternative's failure is the choice's
+    // own and is left to an enclosing choice.
+    private static final class ChoiceParser<T, U> extends FluentParser<T, U> {
+
+        private final List<FluentParser<T, U>> alternatives;
+        private final Counters counters;
+        private final ThreadLocal<Progress> progress;
+
+        ChoiceParser(List<FluentParser<T, U>> alternatives, Counters counters, ThreadLocal<Progress> progress) {
+            this.alternatives = alternatives;
+            this.counters = counters;
+            this.progress = progress;
+        }
+
+        @Override
+        public ParseResult<T, ? extends U> parse(Sequence<T> sequence) {
+            Progress progress = this.progress.get();
+            int outer = progress.rest;
+            try {
+                for (int i = 0; ; i++) {
+                    progress.rest = Integer.MAX_VALUE;
+                    ParseResult<T, ? extends U> result = alternatives.get(i).parse(sequence);
+                    progress.reached(result.getRest().length());
+                    outer = Math.min(outer, progress.rest);
+                    if (result.isSuccess() || i == alternatives.size() - 1) {
+                        return result;
+                    }
+                    counters.backtrackedLength.add(Math.max(0, sequence.length() - progress.rest));
+                }
+            } finally {
+                progress.rest = outer;
+            }
+        }
+    }
+
+    // The least remaining input length reached on this thread since the innermost active choice started its current
+    // alternative.
+    private static final class Progress {
+
+        int rest = Integer.MAX_VALUE;
+
+        void reached(int rest) {
+            if (rest < this.rest) {
+                this.rest = rest;
+            }
+        }
+    }
+
+    private static final class MemoBodyParser<T, U> extends FluentParser<T, U> {
+
+        private final FluentParser<T, U> parser;
+        private final Counters counters;
+
+        MemoBodyParser(FluentParser<T, U> parser, Counters counters) {
+            this.parser = parser;
+            this.counters = counters;
+        }
+
+        @Override
+        public ParseResult<T, ? extends U> parse(Sequence<T> sequence) {
+            counters.frames.get().markEvaluated();
+            return parser.parse(sequence);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.instrument;
+
+import static java.util.Objects.requireNonNull;
+
+public final class RuleStats {
+
+    private final String name;
+    private final long invocations;
+    private final long successes;
+    private final long failures;
+    private final long memoHits;
+    private final long memoMisses;
+    private final long backtrackedLength;
+    private final long nanos;
+
+    public RuleStats(String name, long invocations, long successes, long failures, long memoHits, long memoMisses,
+                     long backtrackedLength, long nanos) {
+        this.name = requireNonNull(name);
+        this.invocations = invocations;
+        this.successes = successes;
+        this.failures = failures;
+        this.memoHits = memoHits;
+        this.memoMisses = memoMisses;
+        this.backtrackedLength = backtrackedLength;
+        this.nanos = nanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getMemoHits() {
+        return memoHits;
+    }
+
+    public long getMemoMisses() {
+        return memoMisses;
+    }
+
+    public long getBacktrackedLength() {
+        return backtrackedLength;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": invocations=" + invocations + ", successes=" + successes + ", failures=" + failures +
+                ", memoHits=" + memoHits + ", memoMisses=" + memoMisses + ", backtrackedLength=" +
+                backtrackedLength + ", nanos=" + nanos;
+    }
+}
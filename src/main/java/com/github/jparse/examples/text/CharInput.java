@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.text;
+
+import com.github.jparse.Sequence;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A char sequence whose sub-sequences are offset views over one source. Views share the ParseContext of the parse
+// they belong to, so the fast paths in TextParsers need no boxing and no copying.
+public final class CharInput implements Sequence<Character>, CharSequence {
+
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+    private final ParseContext context;
+
+    public CharInput(CharSequence source) {
+        this(source, new ParseContext());
+    }
+
+    CharInput(CharSequence source, ParseContext context) {
+        this(source, 0, source.length(), context);
+    }
+
+    private CharInput(CharSequence source, int start, int end, ParseContext context) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.context = context;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public Character at(int index) {
+        return charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public CharInput subSequence(int start) {
+        return subSequence(start, end - this.start);
+    }
+
+    @Override
+    public CharInput subSequence(int start, int end) {
+        if (start < 0 || start > end || end > this.end - this.start) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        if (start == 0 && end == this.end - this.start) {
+            return this;
+        }
+        return new CharInput(source, this.start + start, this.start + end, context);
+    }
+
+    public int getOffset() {
+        return start;
+    }
+
+    @Override
+    public String toString() {
+        return source.subSequence(start, end).toString();
+    }
+
+    int skipWhitespace() {
+        int index = start;
+        while (index < end && Character.isWhitespace(source.charAt(index))) {
+            index++;
+        }
+        return index - start;
+    }
+
+    boolean startsWith(String s, int index) {
+        int offset = start + index;
+        if (end - offset < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (source.charAt(offset + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int match(Pattern pattern, int index) {
+        Matcher matcher = context.matchers.get(pattern);
+        if (matcher == null) {
+            matcher = pattern.matcher(source);
+            context.matchers.put(pattern, matcher);
+        }
+        matcher.region(start + index, end);
+        return matcher.lookingAt() ? matcher.end() - start : -1;
+    }
+
+    MemoTable memoTable(Object key) {
+        MemoTable table = context.memoTables.get(key);
+        if (table == null) {
+            table = new MemoTable(source.length() + 1);
+            context.memoTables.put(key, table);
+        }
+        return table;
+    }
+
+    List<Object> cutEntries() {
+        return context.cutEntries;
+    }
+
+    boolean isCut() {
+        return start < context.cut;
+    }
+
+    void cut() {
+        if (start > context.cut) {
+            context.cut = start;
+            for (MemoTable table : context.memoTables.values()) {
+                table.cut(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// A read-only char view of a memory-mapped file. Single-byte charsets map each byte to a char directly. UTF-8 is
+// indexed as it is read: the first access past the indexed prefix decodes whole blocks of chars up to it and records
+// where each block starts, so a reader that moves forward decodes every block about once and never waits for a pass
+// over the rest of the file. Only length has to index the whole file; hasCharAt lets a scanner find the end without
+// it. The heap holds the block offsets and one decoded block per reading thread rather than the whole text, and the
+// ASCII prefix of a file is read straight from its bytes.
+public final class MappedCharSequence implements CharSequence {
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final char REPLACEMENT = '\ufffd';
+
+    private final ByteBuffer bytes;
+    private final Charset charset;
+    private final boolean utf8;
+    private volatile int length = -1;
+    // The chars of every block before indexed are known, and blockOffsets holds the start of each block up to and
+    // including the one at indexed; chars before asciiLength are single bytes.
+    private volatile int indexed;
+    private volatile int asciiLength;
+    private volatile int[] blockOffsets = new int[16];
+    private final ThreadLocal<Block> block = new ThreadLocal<>();
+
+    private MappedCharSequence(ByteBuffer bytes, Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (!utf8) {
+            length = bytes.limit();
+        }
+    }
+
+    public static MappedCharSequence open(Path path) throws IOException {
+        return open(path, StandardCharsets.UTF_8);
+    }
+
+    public static MappedCharSequence open(Path path, Charset charset) throws IOException {
+        if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII) &&
+                !charset.equals(StandardCharsets.ISO_8859_1)) {
+            throw new IllegalArgumentException("Unsupported charset " + charset);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(path + " is larger than " + Integer.MAX_VALUE + " bytes");
+            }
+            return new MappedCharSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), charset);
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public int length() {
+        int length = this.length;
+        if (length < 0) {
+            index(Integer.MAX_VALUE);
+            length = this.length;
+        }
+        return length;
+    }
+
+    // Whether index < length(), indexing no further than index.
+    public boolean hasCharAt(int index) {
+        return index >= 0 && (index < indexed || index(index));
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (!utf8) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+            char c = (char) (bytes.get(index) & 0xff);
+            return c < 0x80 || charset.equals(StandardCharsets.ISO_8859_1) ? c : REPLACEMENT;
+        }
+        if (index >= 0 && index < asciiLength) {
+            return (char) bytes.get(index);
+        }
+        if (!hasCharAt(index)) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        Block block = this.block.get();
+        int blockIndex = index >>> BLOCK_SHIFT;
+        if (block == null || block.index != blockIndex) {
+            block = decodeBlock(blockIndex, blockOffsets[blockIndex]);
+            this.block.set(block);
+        }
+        return block.chars[index & BLOCK_SIZE - 1];
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || start > end || end > 0 && !hasCharAt(end - 1)) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(start + i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+
+    // Indexes whole blocks until index is covered or the input ends, and returns whether index < length. The block
+    // decoded last becomes this thread's current block, since the caller is about to read from it.
+    private synchronized boolean index(int index) {
+        while (length < 0 && indexed <= index) {
+            int blockIndex = indexed >>> BLOCK_SHIFT;
+            int[] offsets = blockOffsets;
+            Block block = decodeBlock(blockIndex, offsets[blockIndex]);
+            int chars = indexed + block.chars.length;
+            if (asciiLength == indexed && block.ascii) {
+                asciiLength = chars;
+            }
+            if (block.next >= bytes.limit() && block.next >= 0 || block.chars.length < BLOCK_SIZE) {
+                length = chars;
+            } else {
+                if (blockIndex + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[blockIndex + 1] = block.next;
+                blockOffsets = offsets;
+            }
+            indexed = chars;
+            this.block.set(block);
+        }
+        return index < indexed;
+    }
+
+    // Decodes up to BLOCK_SIZE chars from offset. An offset that starts on the low surrogate of a pair is stored
+    // complemented, and so is the offset of the next block when this one ends between the two halves of a pair.
+    private Block decodeBlock(int blockIndex, int offset) {
+        boolean lowSurrogate = offset < 0;
+        int pos = lowSurrogate ? ~offset : offset;
+        int limit = bytes.limit();
+        char[] chars = new char[BLOCK_SIZE];
+        boolean ascii = true;
+        int i = 0;
+        boolean split = false;
+        while (i < BLOCK_SIZE && pos < limit) {
+            long decoded = decode(pos);
+            int codePoint = (int) decoded;
+            ascii &= codePoint < 0x80;
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[i++] = (char) codePoint;
+            } else if (lowSurrogate) {
+                chars[i++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[i++] = Character.highSurrogate(codePoint);
+                if (i == BLOCK_SIZE) {
+                    split = true;
+                    break;
+                }
+                chars[i++] = Character.lowSurrogate(codePoint);
+            }
+            lowSurrogate = false;
+            pos += (int) (decoded >>> 32);
+        }
+        return new Block(blockIndex, i < BLOCK_SIZE ? Arrays.copyOf(chars, i) : chars, ascii, split ? ~pos : pos);
+    }
+
+    // Returns the code point at pos in the low half and its length in bytes in the high half; malformed input
+    // decodes to one replacement character per byte.
+    private long decode(int pos) {
+        int b0 = bytes.get(pos) & 0xff;
+        if (b0 < 0x80) {
+            return 1L << 32 | b0;
+        }
+        int limit = bytes.limit();
+        if (b0 >= 0xc2 && b0 < 0xe0 && pos + 1 < limit && isContinuation(pos + 1)) {
+            return 2L << 32 | (b0 & 0x1f) << 6 | bytes.get(pos + 1) & 0x3f;
+        } else if (b0 >= 0xe0 && b0 < 0xf0 && pos + 2 < limit && isContinuation(pos + 1) &&
+                isContinuation(pos + 2)) {
+            int codePoint = (b0 & 0x0f) << 12 | (bytes.get(pos + 1) & 0x3f) << 6 | bytes.get(pos + 2) & 0x3f;
+            if (codePoint >= 0x800 && !Character.isSurrogate((char) codePoint)) {
+                return 3L << 32 | codePoint;
+            }
+        } else if (b0 >= 0xf0 && b0 < 0xf5 && pos + 3 < limit && isContinuation(pos + 1) &&
+                isContinuation(pos + 2) && isContinuation(pos + 3)) {
+            int codePoint = (b0 & 0x07) << 18 | (bytes.get(pos + 1) & 0x3f) << 12 |
+                    (bytes.get(pos + 2) & 0x3f) << 6 | bytes.get(pos + 3) & 0x3f;
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT && codePoint <= Character.MAX_CODE_POINT) {
+                return 4L << 32 | codePoint;
+            }
+        }
+        return 1L << 32 | REPLACEMENT;
+    }
+
+    private boolean isContinuation(int pos) {
+        return (bytes.get(pos) & 0xc0) == 0x80;
+    }
+
+    private static final class Block {
+
+        final int index;
+        final char[] chars;
+        final boolean ascii;
+        final int next;
+
+        Block(int index, char[] chars, boolean ascii, int next) {
+            this.index = index;
+            this.chars = chars;
+            this.ascii = ascii;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.text;
+
+import java.util.Arrays;
+
+// Memo entries by absolute offset, allocated in pages on demand. A cut drops every page that lies entirely before
+// the cut offset, so a parse that commits as it goes only keeps the pages around its current position.
+final class MemoTable {
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private Object[][] pages;
+    private int firstPage;
+    private int limit;
+
+    MemoTable(int length) {
+        pages = new Object[(length >>> PAGE_SHIFT) + 1][];
+    }
+
+    // Prepares the table for an input of the given length, keeping the pages it already has. Only the entries
+    // below the highest offset stored since the last reset are cleared, which for short inputs is a few slots.
+    void reset(int length) {
+        int count = (length >>> PAGE_SHIFT) + 1;
+        if (count > pages.length || pages.length > 2 * count + 8) {
+            pages = new Object[count][];
+        } else {
+            for (int i = firstPage, last = Math.min(pages.length - 1, limit >>> PAGE_SHIFT); i <= last; i++) {
+                Object[] page = pages[i];
+                if (page != null) {
+                    Arrays.fill(page, 0, Math.min(PAGE_SIZE, limit - (i << PAGE_SHIFT) + 1), null);
+                }
+            }
+        }
+        firstPage = 0;
+        limit = 0;
+    }
+
+    Object get(int offset) {
+        Object[] page = pages[offset >>> PAGE_SHIFT];
+        return page == null ? null : page[offset & PAGE_SIZE - 1];
+    }
+
+    void put(int offset, Object value) {
+        int index = offset >>> PAGE_SHIFT;
+        Object[] page = pages[index];
+        if (page == null) {
+            page = new Object[PAGE_SIZE];
+            pages[index] = page;
+        }
+        page[offset & PAGE_SIZE - 1] = value;
+        if (offset > limit) {
+            limit = offset;
+        }
+    }
+
+    void cut(int offset) {
+        int lastPage = offset >>> PAGE_SHIFT;
+        for (; firstPage < lastPage; firstPage++) {
+            pages[firstPage] = null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.text;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The per-parse state shared by the views of a CharInput: matchers, memo tables, the cut offset and the memo entries
+// still being grown before it. A context can be reset for another input, which rebinds its matchers and clears its
+// memo tables in place, so a thread parsing many short inputs keeps reusing the same structures. Inputs from a
+// previous parse must not be used after a reset.
+public final class ParseContext {
+
+    private static final int MAX_TABLES = 64;
+    private static final ThreadLocal<ParseContext> contexts = new ThreadLocal<ParseContext>() {
+        @Override
+        protected ParseContext initialValue() {
+            return new ParseContext();
+        }
+    };
+
+    final Map<Pattern, Matcher> matchers = new IdentityHashMap<>();
+    final Map<Object, MemoTable> memoTables = new IdentityHashMap<>();
+    final List<Object> cutEntries = new ArrayList<>();
+    int cut;
+    private boolean acquired;
+
+    // Returns this thread's context, or a fresh one if it is already in use further up the stack.
+    public static ParseContext acquire() {
+        ParseContext context = contexts.get();
+        if (context.acquired) {
+            context = new ParseContext();
+        }
+        context.acquired = true;
+        return context;
+    }
+
+    public void release() {
+        acquired = false;
+    }
+
+    public CharInput input(CharSequence source) {
+        cut = 0;
+        cutEntries.clear();
+        for (Map.Entry<Pattern, Matcher> entry : matchers.entrySet()) {
+            entry.getValue().reset(source);
+        }
+        if (memoTables.size() > MAX_TABLES) {
+            memoTables.clear();
+        }
+        for (MemoTable table : memoTables.values()) {
+            table.reset(source.length() + 1);
+        }
+        return new CharInput(source, this);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.text;
+
+import com.github.jparse.CharParsers;
+import com.github.jparse.FluentParser;
+import com.github.jparse.ParseResult;
+import com.github.jparse.Sequence;
+import com.github.jparse.StatefulParsers;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+public final class TextParsers {
+
+    private TextParsers() {
+    }
+
+    public static FluentParser<Character, String> literal(final String literal) {
+        final FluentParser<Character, String> fallback = lazy(new Supplier<FluentParser<Character, String>>() {
+            @Override
+            public FluentParser<Character, String> get() {
+                return CharParsers.literal(literal);
+            }
+        });
+        return new FluentParser<Character, String>() {
+            @Override
+            public ParseResult<Character, ? extends String> parse(Sequence<Character> sequence) {
+                if (!(sequence instanceof CharInput)) {
+                    return fallback.parse(sequence);
+                }
+                CharInput input = (CharInput) sequence;
+                int start = input.skipWhitespace();
+                if (input.startsWith(literal, start)) {
+                    return ParseResult.success(literal, input.subSequence(start + literal.length()));
+                }
+                return ParseResult.failure("'" + literal + "' expected", sequence);
+            }
+        };
+    }
+
+    public static FluentParser<Character, String> pattern(final String regex) {
+        final FluentParser<Character, String> fallback = lazy(new Supplier<FluentParser<Character, String>>() {
+            @Override
+            public FluentParser<Character, String> get() {
+                return CharParsers.pattern(regex);
+            }
+        });
+        final Pattern pattern = Pattern.compile(regex);
+        return new FluentParser<Character, String>() {
+            @Override
+            public ParseResult<Character, ? extends String> parse(Sequence<Character> sequence) {
+                if (!(sequence instanceof CharInput)) {
+                    return fallback.parse(sequence);
+                }
+                CharInput input = (CharInput) sequence;
+                int start = input.skipWhitespace();
+                int end = input.match(pattern, start);
+                if (end >= 0) {
+                    return ParseResult.success(input.subSequence(start, end).toString(), input.subSequence(end));
+                }
+                return ParseResult.failure("'" + regex + "' expected", sequence);
+            }
+        };
+    }
+
+    // Builds the parser on its first use, so a graph only pays for the parts that actually run. Concurrent first
+    // uses may each build one; the graphs are equivalent and the last one built is kept.
+    public static <T, U> FluentParser<T, U> lazy(final Supplier<? extends FluentParser<T, U>> supplier) {
+        return new FluentParser<T, U>() {
+            private volatile FluentParser<T, U> parser;
+
+            @Override
+            public ParseResult<T, ? extends U> parse(Sequence<T> sequence) {
+                FluentParser<T, U> p = parser;
+                if (p == null) {
+                    p = supplier.get();
+                    parser = p;
+                }
+                return p.parse(sequence);
+            }
+        };
+    }
+
+    public static <T, U> FluentParser<T, U> memo(FluentParser<T, U> parser) {
+        return new MemoParser<>(parser);
+    }
+
+    // Once parser succeeds, nothing can backtrack before the end of its match, so memo entries before that offset
+    // are released.
+    public static <U> FluentParser<Character, U> cut(final FluentParser<Character, U> parser) {
+        return new FluentParser<Character, U>() {
+            @Override
+            public ParseResult<Character, ? extends U> parse(Sequence<Character> sequence) {
+                ParseResult<Character, ? extends U> result = parser.parse(sequence);
+                if (result.isSuccess() && result.getRest() instanceof CharInput) {
+                    ((CharInput) result.getRest()).cut();
+                }
+                return result;
+            }
+        };
+    }
+
+    // Memoizes per absolute offset in the tables of a CharInput. A call that reaches itself at the same offset gets
+    // a failed seed first, and the result is then grown until it stops getting longer; rules on the cycle that are
+    // not its head must not be memoized, as GrammarAnalysis arranges.
+    private static final class MemoParser<T, U> extends FluentParser<T, U> {
+
+        private final FluentParser<T, U> parser;
+        private final FluentParser<T, U> fallback;
+
+        MemoParser(FluentParser<T, U> parser) {
+            this.parser = parser;
+            fallback = StatefulParsers.memo(parser);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ParseResult<T, ? extends U> parse(Sequence<T> sequence) {
+            if (!(sequence instanceof CharInput)) {
+                return fallback.parse(sequence);
+            }
+            CharInput input = (CharInput) sequence;
+            if (input.isCut()) {
+                return parseCut(input, sequence);
+            }
+            MemoTable table = input.memoTable(this);
+            int offset = input.getOffset();
+            Entry entry = (Entry) table.get(offset);
+            if (entry != null) {
+                if (entry.evaluating) {
+                    entry.leftRecursive = true;
+                }
+                return (ParseResult<T, ? extends U>) entry.result;
+            }
+            entry = new Entry(ParseResult.failure("Left recursion", sequence));
+            table.put(offset, entry);
+            return grow(entry, sequence);
+        }
+
+        // The memo pages before the cut offset are gone, so the entry lives on the context's stack only while it is
+        // being grown; a left-recursive head still gets its failed seed instead of recursing forever.
+        @SuppressWarnings("unchecked")
+        private ParseResult<T, ? extends U> parseCut(CharInput input, Sequence<T> sequence) {
+            List<Object> entries = input.cutEntries();
+            int offset = input.getOffset();
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                CutEntry entry = (CutEntry) entries.get(i);
+                if (entry.parser == this && entry.offset == offset) {
+                    entry.leftRecursive = true;
+                    return (ParseResult<T, ? extends U>) entry.result;
+                }
+            }
+            CutEntry entry = new CutEntry(this, offset, ParseResult.failure("Left recursion", sequence));
+            entries.add(entry);
+            try {
+                return grow(entry, sequence);
+            } finally {
+                entries.remove(entries.size() - 1);
+            }
+        }
+
+        // An exception from the body still ends the evaluation, so a later call at this offset is not taken for
+        // left recursion.
+        private ParseResult<T, ? extends U> grow(Entry entry, Sequence<T> sequence) {
+            try {
+                ParseResult<T, ? extends U> result = parser.parse(sequence);
+                if (entry.leftRecursive && result.isSuccess()) {
+                    while (true) {
+                        entry.result = result;
+                        ParseResult<T, ? extends U> next = parser.parse(sequence);
+                        if (!next.isSuccess() || next.getRest().length() >= result.getRest().length()) {
+                            break;
+                        }
+                        result = next;
+                    }
+                }
+                entry.result = result;
+                return result;
+            } finally {
+                entry.evaluating = false;
+            }
+        }
+    }
+
+    private static class Entry {
+
+        ParseResult<?, ?> result;
+        boolean evaluating = true;
+        boolean leftRecursive;
+
+        Entry(ParseResult<?, ?> result) {
+            this.result = result;
+        }
+    }
+
+    private static final class CutEntry extends Entry {
+
+        final Object parser;
+        final int offset;
+
+        CutEntry(Object parser, int offset, ParseResult<?, ?> result) {
+            super(result);
+            this.parser = parser;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.calculator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionCacheTest {
+
+    @Test
+    public void evaluatesLikeTheCalculator() {
+        ExpressionCache cache = new ExpressionCache(16);
+        for (String expression : new String[]{"1+(2-3)*4", "1.5e1/3", "-2*-2", "1+(2-3)*4"}) {
+            assertEquals(Calculator.evaluate(expression), cache.evaluate(expression));
+        }
+        assertEquals(-3, cache.evaluate("1+(2-3)*4").intValue());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void repeatedExpressionsHitTheCache() {
+        ExpressionCache cache = new ExpressionCache(4);
+        CompiledExpression compiled = cache.compile("1+2");
+        assertSame(compiled, cache.compile("1+2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.compile("1+2");
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void sizeStaysWithinBound() {
+        ExpressionCache cache = new ExpressionCache(32);
+        for (int i = 0; i < 1000; i++) {
+            cache.compile(i + "+1");
+            assertTrue(cache.size() <= 32);
+        }
+        assertEquals(1000, cache.getMissCount());
+        assertTrue(cache.getEvictionCount() >= 1000 - 32);
+    }
+
+    @Test
+    public void weightStaysWithinBound() {
+        ExpressionCache cache = new ExpressionCache(1000, 640);
+        for (int i = 0; i < 1000; i++) {
+            cache.compile(i + "*2+1");
+            assertTrue(cache.weight() <= 640);
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void overweightExpressionIsNotStored() {
+        ExpressionCache cache = new ExpressionCache(1, 10);
+        cache.compile("1+2");
+        assertEquals(28, cache.evaluate("1+2+3+4+5+6+7").intValue());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.weight());
+        assertEquals(0, cache.getEvictionCount());
+        cache.compile("1+2");
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void illegalBoundsAreRejected() {
+        for (long[] bounds : new long[][]{{0, 1}, {1, 0}, {-1, 10}}) {
+            try {
+                new ExpressionCache((int) bounds[0], bounds[1]);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import com.github.jparse.ParseResult;
+import com.github.jparse.examples.calculator.CalculatorParser;
+import com.github.jparse.examples.text.CharInput;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GrammarInterpreterTest {
+
+    private static final String ALPHABET = "0123456789.eE+-*/() \t\n";
+
+    @Test
+    public void numberIsScannedByADfa() throws IOException {
+        Grammar grammar = bundledGrammar();
+        assertTrue(new GrammarAnalysis(grammar).isRegular("number"));
+        assertTrue(new GrammarAnalysis(GrammarOptimizer.optimize(grammar, "expr")).isRegular("number"));
+        ParseResult<Character, ?> result = new GrammarInterpreter(grammar).parse("number", " -1.5e3");
+        assertTrue(result.isSuccess());
+        assertEquals("-1.5e3", result.getResult().toString());
+        assertFalse(new GrammarInterpreter(grammar).parse("number", "1.").isSuccess());
+    }
+
+    // The interpreter scans number with its DFA and the generated parser descends through the rule's ordered
+    // choices, so agreeing on every input also checks the DFA against ordered choice.
+    @Test
+    public void interpreterAgreesWithGeneratedParser() throws IOException {
+        Grammar grammar = bundledGrammar();
+        GrammarInterpreter interpreter = new GrammarInterpreter(grammar);
+        GrammarInterpreter optimized = new GrammarInterpreter(GrammarOptimizer.optimize(grammar, "expr"));
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            String input = randomInput(random, ALPHABET, 10);
+            int expected = CalculatorParser.parse(input);
+            assertEquals(input, expected, matchLength(interpreter, "expr", input));
+            assertEquals(input, expected, matchLength(optimized, "expr", input));
+        }
+        assertEquals(" 1 + ( 2 - 3 ) * 4".length(), CalculatorParser.parse(" 1 + ( 2 - 3 ) * 4"));
+    }
+
+    @Test
+    public void interpretsLongReferenceChains() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append('r').append(i).append(" : 'q' r").append(i + 1).append(" | 'z';\n");
+        }
+        sb.append("r5000 : 'e';");
+        GrammarInterpreter interpreter = new GrammarInterpreter(Ebnf.parse(sb));
+        assertTrue(interpreter.parse("r4998", "q q e").isSuccess());
+        assertFalse(interpreter.parse("r4998", "q q").isSuccess());
+    }
+
+    static String bundledSource() throws IOException {
+        return Ebnf.readFully(new InputStreamReader(Ebnf.class.getResourceAsStream("grammar"), "UTF-8"));
+    }
+
+    static Grammar bundledGrammar() throws IOException {
+        return Ebnf.parse(bundledSource());
+    }
+
+    static String randomInput(Random random, String alphabet, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(maxLength); i > 0; i--) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    // The length of the prefix the rule matches, or -1 when it fails.
+    static int matchLength(GrammarInterpreter interpreter, String rule, String input) {
+        ParseResult<Character, ?> result = interpreter.getParser(rule).parse(new CharInput(input));
+        return result.isSuccess() ? input.length() - result.getRest().length() : -1;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static com.github.jparse.examples.ebnf.GrammarInterpreterTest.matchLength;
+import static com.github.jparse.examples.ebnf.GrammarInterpreterTest.randomInput;
+import static org.junit.Assert.assertEquals;
+
+public class GrammarOptimizerTest {
+
+    @Test
+    public void bundledGrammarKeepsItsLanguage() throws IOException {
+        assertSameLanguage(GrammarInterpreterTest.bundledGrammar(), "expr", "0123456789.eE+-*/() ");
+    }
+
+    @Test
+    public void leftRecursionRemovalKeepsTheLanguage() {
+        assertSameLanguage(Ebnf.parse("list : list ',' item | item; item : 'a' | 'b' '(' list ')';"), "list", "ab(),");
+    }
+
+    @Test
+    public void inliningKeepsTheLanguage() {
+        assertSameLanguage(Ebnf.parse("start : pair+ end; pair : key '=' value; key : 'k' | 'kk'; value : key? 'v';" +
+                "end : '.' | ';';"), "start", "kv=.;");
+    }
+
+    @Test
+    public void commonPrefixesKeepTheLanguage() {
+        assertSameLanguage(Ebnf.parse("start : 'a' 'b' 'c' | 'a' 'b' | 'a' 'd' | ('x' | 'y')? 'z';"), "start",
+                "abcdxyz");
+    }
+
+    private static void assertSameLanguage(Grammar grammar, String start, String alphabet) {
+        GrammarInterpreter interpreter = new GrammarInterpreter(grammar);
+        GrammarInterpreter optimized = new GrammarInterpreter(GrammarOptimizer.optimize(grammar, start));
+        Random random = new Random(start.hashCode());
+        for (int i = 0; i < 10000; i++) {
+            String input = randomInput(random, alphabet, 12);
+            assertEquals(input, matchLength(interpreter, start, input), matchLength(optimized, start, input));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Igor Konev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.jparse.examples.ebnf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GrammarSnapshotTest {
+
+    private Path directory;
+    private Path source;
+    private Path snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        source = directory.resolve("grammar");
+        snapshot = directory.resolve("grammar.snapshot");
+        Files.write(source, GrammarInterpreterTest.bundledSource().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void encodedGrammarReadsBack() throws IOException {
+        Grammar grammar = GrammarInterpreterTest.bundledGrammar();
+        assertEquals(grammar.toString(), GrammarSnapshot.read(GrammarSnapshot.encode(grammar, 42)).toString());
+        Grammar optimized = GrammarOptimizer.optimize(grammar, "expr");
+        assertEquals(optimized.toString(), GrammarSnapshot.read(GrammarSnapshot.encode(optimized, 42)).toString());
+    }
+
+    @Test
+    public void loadWritesAndThenReadsTheSnapshot() throws IOException {
+        String expected = Ebnf.parse(source).toString();
+        assertEquals(expected, GrammarSnapshot.load(source, snapshot).toString());
+        assertTrue(Files.exists(snapshot));
+        assertEquals(expected, GrammarSnapshot.read(snapshot).toString());
+        assertEquals(expected, GrammarSnapshot.load(source, snapshot).toString());
+    }
+
+    @Test
+    public void changedSourceIsParsedAgain() throws IOException {
+        GrammarSnapshot.load(source, snapshot);
+        Files.write(source, "start : 'a' start | 'b';".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Ebnf.parse(source).toString(), GrammarSnapshot.load(source, snapshot).toString());
+    }
+
+    @Test
+    public void corruptSnapshotIsRejectedAndReplaced() throws IOException {
+        String expected = GrammarSnapshot.load(source, snapshot).toString();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        try {
+            GrammarSnapshot.read(snapshot);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Grammar snapshot checksum mismatch", e.getMessage());
+        }
+        assertEquals(expected, GrammarSnapshot.load(source, snapshot).toString());
+        assertEquals(expected, GrammarSnapshot.read(snapshot).toString());
+    }
+
+    @Test
+    public void truncatedSnapshotIsRejected() {
+        ByteBuffer encoded = GrammarSnapshot.encode(Ebnf.parse("start : 'a' start | 'b';"), 0);
+        for (int length = 0; length < encoded.remaining(); length++) {
+            ByteBuffer truncated = encoded.duplicate();
+            truncated.limit(truncated.position() + length);
+            assertRejected(truncated);
+        }
+    }
+
+    @Test
+    public void foreignBytesAreRejected() {
+        assertRejected(ByteBuffer.wrap("start : 'a' start | 'b';".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertRejected(ByteBuffer buffer) {
+        try {
+            GrammarSnapshot.read(buffer);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}